@@ -0,0 +1,69 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.benchmarks;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+
+/**
+ * @author Andres Almiray
+ */
+final class BenchmarkSupport {
+    static final String ITEM_MAPPING = "org/codehaus/griffon/runtime/hibernate3/benchmarks/Item.hbm.xml";
+    static final int ITEM_COUNT = 100;
+
+    private BenchmarkSupport() {
+        // prevent instantiation
+    }
+
+    static Configuration createConfiguration(String databaseName) {
+        return new Configuration()
+            .setProperty(Environment.DRIVER, "org.h2.Driver")
+            .setProperty(Environment.URL, "jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1")
+            .setProperty(Environment.USER, "sa")
+            .setProperty(Environment.PASS, "")
+            .setProperty(Environment.DIALECT, "org.hibernate.dialect.H2Dialect")
+            .setProperty(Environment.POOL_SIZE, "16")
+            .setProperty(Environment.HBM2DDL_AUTO, "create-drop");
+    }
+
+    static Configuration createMappedConfiguration(String databaseName) {
+        return createConfiguration(databaseName).addResource(ITEM_MAPPING);
+    }
+
+    static SessionFactory buildSessionFactory(String databaseName) {
+        return createConfiguration(databaseName).buildSessionFactory();
+    }
+
+    static SessionFactory buildMappedSessionFactory(String databaseName) {
+        SessionFactory sessionFactory = createMappedConfiguration(databaseName).buildSessionFactory();
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            for (long id = 0; id < ITEM_COUNT; id++) {
+                session.save(new Item(id, "item-" + id));
+            }
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+        return sessionFactory;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.benchmarks;
+
+import griffon.core.Configuration;
+import griffon.plugins.hibernate3.Hibernate3Factory;
+import griffon.plugins.hibernate3.Hibernate3Handler;
+import org.codehaus.griffon.runtime.hibernate3.DefaultHibernate3Handler;
+import org.codehaus.griffon.runtime.hibernate3.DefaultHibernate3Storage;
+import org.codehaus.griffon.runtime.hibernate3.RecordingSessionFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code withHbm3Session} and {@code withHbm3ReadOnlySession} against an in-memory H2 database.
+ * Run with {@code -t <threads>} to measure contention.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Hibernate3HandlerBenchmark {
+    private SessionFactory sessionFactory;
+    private Hibernate3Handler handler;
+
+    @Setup
+    public void setup() {
+        sessionFactory = new RecordingSessionFactory(BenchmarkSupport.buildMappedSessionFactory("handler"));
+        handler = new DefaultHibernate3Handler(new SingleHibernate3Factory(sessionFactory), new DefaultHibernate3Storage());
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public boolean emptyCallback() {
+        return handler.withHbm3Session((sessionFactoryName, session) -> session.isOpen());
+    }
+
+    @Benchmark
+    public Item readWriteGet() {
+        return handler.withHbm3Session((sessionFactoryName, session) -> (Item) session.get(Item.class, randomId()));
+    }
+
+    @Benchmark
+    public Item readOnlyGet() {
+        return handler.withHbm3ReadOnlySession((sessionFactoryName, session) -> (Item) session.get(Item.class, randomId()));
+    }
+
+    @Benchmark
+    public List<?> readWriteQuery() {
+        return handler.withHbm3Session(Hibernate3HandlerBenchmark::queryItems);
+    }
+
+    @Benchmark
+    public List<?> readOnlyQuery() {
+        return handler.withHbm3ReadOnlySession(Hibernate3HandlerBenchmark::queryItems);
+    }
+
+    private static List<?> queryItems(String sessionFactoryName, Session session) {
+        return session.createQuery("from Item where id < :max")
+            .setLong("max", 20L)
+            .list();
+    }
+
+    private static long randomId() {
+        return ThreadLocalRandom.current().nextLong(BenchmarkSupport.ITEM_COUNT);
+    }
+
+    private static class SingleHibernate3Factory implements Hibernate3Factory {
+        private final SessionFactory sessionFactory;
+
+        private SingleHibernate3Factory(SessionFactory sessionFactory) {
+            this.sessionFactory = sessionFactory;
+        }
+
+        @Override
+        public Set<String> getSessionFactoryNames() {
+            return Collections.singleton(KEY_DEFAULT);
+        }
+
+        @Override
+        public Map<String, Object> getConfigurationFor(String sessionFactoryName) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Configuration getConfiguration() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SessionFactory create(String name) {
+            return sessionFactory;
+        }
+
+        @Override
+        public void destroy(String name, SessionFactory instance) {
+            // closed by the benchmark
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.benchmarks;
+
+import org.codehaus.griffon.runtime.hibernate3.LinkedSession;
+import org.codehaus.griffon.runtime.hibernate3.RecordingSessionFactory;
+import org.codehaus.griffon.runtime.hibernate3.SessionDecorator;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of calling through {@code SessionDecorator} and {@code LinkedSession} compared to the raw Hibernate session.
+ * Calls are answered by the first-level cache so that the decorators dominate.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SessionDecoratorBenchmark {
+    private SessionFactory sessionFactory;
+    private org.hibernate.classic.Session raw;
+    private Session decorated;
+    private Session linked;
+    private Item item;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sessionFactory = BenchmarkSupport.buildMappedSessionFactory("decorator");
+        raw = sessionFactory.openSession();
+        decorated = new SessionDecorator(raw);
+        linked = new LinkedSession(raw, new RecordingSessionFactory(sessionFactory));
+        item = (Item) raw.get(Item.class, 1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        raw.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public Object rawGet() {
+        return raw.get(Item.class, 1L);
+    }
+
+    @Benchmark
+    public Object decoratedGet() {
+        return decorated.get(Item.class, 1L);
+    }
+
+    @Benchmark
+    public Object linkedGet() {
+        return linked.get(Item.class, 1L);
+    }
+
+    @Benchmark
+    public boolean rawContains() {
+        return raw.contains(item);
+    }
+
+    @Benchmark
+    public boolean decoratedContains() {
+        return decorated.contains(item);
+    }
+
+    @Benchmark
+    public boolean linkedContains() {
+        return linked.contains(item);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.benchmarks;
+
+import org.codehaus.griffon.runtime.hibernate3.internal.ConfigurationCache;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent building a SessionFactory, the bulk of {@code DefaultHibernate3Factory.create}, with mappings parsed from
+ * scratch and with mappings restored from the configuration cache.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+public class SessionFactoryBuildBenchmark {
+    private ConfigurationCache cache;
+    private String key;
+
+    @Setup
+    public void setup() throws IOException {
+        File directory = Files.createTempDirectory("griffon-hibernate3-benchmarks").toFile();
+        directory.deleteOnExit();
+        cache = new ConfigurationCache(directory, "build", getClass().getClassLoader());
+        cache.updateWithResource(BenchmarkSupport.ITEM_MAPPING);
+        key = cache.computeKey();
+
+        Configuration configuration = BenchmarkSupport.createMappedConfiguration("build");
+        configuration.buildMappings();
+        cache.store(key, configuration);
+    }
+
+    @Benchmark
+    public SessionFactory coldBuild() {
+        return close(BenchmarkSupport.createMappedConfiguration("build").buildSessionFactory());
+    }
+
+    @Benchmark
+    public SessionFactory cachedBuild() {
+        return close(cache.load(key).buildSessionFactory());
+    }
+
+    private static SessionFactory close(SessionFactory sessionFactory) {
+        sessionFactory.close();
+        return sessionFactory;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.benchmarks;
+
+import org.codehaus.griffon.runtime.hibernate3.RecordingSessionFactory;
+import org.codehaus.griffon.runtime.hibernate3.SessionFactoryDecorator;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of opening, using and closing a session through the plugin's decorators.
+ * {@code layered} reproduces the former layout where JMX registration added another SessionFactory decorator.
+ * Run with {@code -prof gc} to compare allocation rates.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionWrappingBenchmark {
+    private SessionFactory raw;
+    private SessionFactory recording;
+    private SessionFactory layered;
+
+    @Setup
+    public void setup() {
+        raw = BenchmarkSupport.buildSessionFactory("wrapping");
+        recording = new RecordingSessionFactory(raw);
+        layered = new SessionFactoryDecorator(new RecordingSessionFactory(raw));
+    }
+
+    @TearDown
+    public void tearDown() {
+        raw.close();
+    }
+
+    @Benchmark
+    public boolean raw() {
+        return openUseAndClose(raw);
+    }
+
+    @Benchmark
+    public boolean recording() {
+        return openUseAndClose(recording);
+    }
+
+    @Benchmark
+    public boolean layered() {
+        return openUseAndClose(layered);
+    }
+
+    private static boolean openUseAndClose(SessionFactory sessionFactory) {
+        Session session = sessionFactory.openSession();
+        try {
+            return session.isOpen() && session.isConnected();
+        } finally {
+            session.close();
+        }
+    }
+}
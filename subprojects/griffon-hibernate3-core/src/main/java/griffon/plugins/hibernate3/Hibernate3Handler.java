@@ -20,6 +20,11 @@ package griffon.plugins.hibernate3;
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 import griffon.plugins.hibernate3.exceptions.RuntimeHibernate3Exception;
+import org.hibernate.Session;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Andres Almiray
@@ -34,6 +39,58 @@ public interface Hibernate3Handler {
     <R> R withHbm3Session(@Nonnull String sessionFactoryName, @Nonnull Hibernate3Callback<R> callback)
         throws RuntimeHibernate3Exception;
 
+    @Nullable
+    <R> R withHbm3Session(@Nonnull Propagation propagation, @Nonnull Hibernate3Callback<R> callback)
+        throws RuntimeHibernate3Exception;
+
+    @Nullable
+    <R> R withHbm3Session(@Nonnull String sessionFactoryName, @Nonnull Propagation propagation, @Nonnull Hibernate3Callback<R> callback)
+        throws RuntimeHibernate3Exception;
+
+    @Nullable
+    <R> R withHbm3Session(@Nonnull RetryPolicy retryPolicy, @Nonnull Hibernate3Callback<R> callback)
+        throws RuntimeHibernate3Exception;
+
+    @Nullable
+    <R> R withHbm3Session(@Nonnull String sessionFactoryName, @Nonnull RetryPolicy retryPolicy, @Nonnull Hibernate3Callback<R> callback)
+        throws RuntimeHibernate3Exception;
+
+    @Nullable
+    <R> R withHbm3ReadOnlySession(@Nonnull Hibernate3Callback<R> callback)
+        throws RuntimeHibernate3Exception;
+
+    @Nullable
+    <R> R withHbm3ReadOnlySession(@Nonnull String sessionFactoryName, @Nonnull Hibernate3Callback<R> callback)
+        throws RuntimeHibernate3Exception;
+
+    @Nullable
+    <R> R withHbm3StatelessSession(@Nonnull Hibernate3StatelessCallback<R> callback)
+        throws RuntimeHibernate3Exception;
+
+    @Nullable
+    <R> R withHbm3StatelessSession(@Nonnull String sessionFactoryName, @Nonnull Hibernate3StatelessCallback<R> callback)
+        throws RuntimeHibernate3Exception;
+
+    @Nonnull
+    <R> CompletableFuture<R> withHbm3SessionAsync(@Nonnull Hibernate3Callback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withHbm3SessionAsync(@Nonnull String sessionFactoryName, @Nonnull Hibernate3Callback<R> callback);
+
+    @Nonnull
+    <R> Hibernate3Results<R> withHbm3Sessions(@Nonnull Collection<String> sessionFactoryNames, @Nonnull Hibernate3Callback<R> callback);
+
+    @Nonnull
+    <R> Hibernate3Results<R> withHbm3Sessions(@Nonnull Collection<String> sessionFactoryNames, long timeoutMillis, @Nonnull Hibernate3Callback<R> callback);
+
+    <R> long streamHbm3(@Nonnull String hql, @Nonnull Map<String, ?> params, @Nonnull Hibernate3RowCallback<R> callback)
+        throws RuntimeHibernate3Exception;
+
+    <R> long streamHbm3(@Nonnull String sessionFactoryName, @Nonnull String hql, @Nonnull Map<String, ?> params, @Nonnull Hibernate3RowCallback<R> callback)
+        throws RuntimeHibernate3Exception;
+
+    int flushEvery(@Nonnull Session session, int batchSize, @Nonnull Iterable<?> entities);
+
     void closeHbm3Session();
 
     void closeHbm3Session(@Nonnull String sessionFactoryName);
@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate3;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.hibernate3.exceptions.RuntimeHibernate3Exception;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Outcome of running a callback against several SessionFactories. Results and failures are keyed by
+ * SessionFactory name, in the order the names were given.
+ *
+ * @author Andres Almiray
+ */
+public final class Hibernate3Results<R> {
+    private final Map<String, R> results;
+    private final Map<String, RuntimeHibernate3Exception> failures;
+
+    public Hibernate3Results(@Nonnull Map<String, R> results, @Nonnull Map<String, RuntimeHibernate3Exception> failures) {
+        this.results = Collections.unmodifiableMap(new LinkedHashMap<>(requireNonNull(results, "Argument 'results' must not be null")));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(requireNonNull(failures, "Argument 'failures' must not be null")));
+    }
+
+    /**
+     * Results of the SessionFactories whose callback completed in time.
+     */
+    @Nonnull
+    public Map<String, R> getResults() {
+        return results;
+    }
+
+    /**
+     * Failures of the SessionFactories whose callback failed or timed out.
+     */
+    @Nonnull
+    public Map<String, RuntimeHibernate3Exception> getFailures() {
+        return failures;
+    }
+
+    @Nullable
+    public R getResult(@Nonnull String sessionFactoryName) {
+        return results.get(sessionFactoryName);
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "Hibernate3Results[results=" + results.keySet() + ", failures=" + failures.keySet() + "]";
+    }
+}
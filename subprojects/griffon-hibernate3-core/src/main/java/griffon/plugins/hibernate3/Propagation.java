@@ -0,0 +1,35 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate3;
+
+/**
+ * How {@code withHbm3Session} behaves when a session of the same SessionFactory is already open on the calling thread.
+ *
+ * @author Andres Almiray
+ */
+public enum Propagation {
+    /**
+     * Joins the session and transaction already open on the calling thread, if any. Otherwise opens a new one.
+     */
+    REQUIRED,
+
+    /**
+     * Always opens a new session with its own transaction. The enclosing session, if any, is resumed afterwards.
+     */
+    REQUIRES_NEW
+}
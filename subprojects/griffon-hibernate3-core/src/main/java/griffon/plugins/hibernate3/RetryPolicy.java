@@ -0,0 +1,82 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate3;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often {@code withHbm3Session} runs a callback again, each time in a new session, when its transaction fails
+ * with a deadlock, a serialization failure, a lock timeout or stale state. Attempts are spaced with an exponential
+ * backoff with jitter.
+ *
+ * @author Andres Almiray
+ */
+public final class RetryPolicy {
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Argument 'maxAttempts' must be greater than zero");
+        }
+        if (initialBackoffMillis < 0) {
+            throw new IllegalArgumentException("Argument 'initialBackoffMillis' must not be negative");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = Math.max(initialBackoffMillis, maxBackoffMillis);
+    }
+
+    /**
+     * Total number of attempts, including the first one.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * Milliseconds to wait after the given failed attempt: the initial backoff doubled for every previous attempt,
+     * capped at the maximum backoff, of which a random half is taken off so that competing transactions drift apart.
+     *
+     * @param attempt the number of the attempt that failed, starting at 1
+     */
+    public long getBackoffMillis(int attempt) {
+        long backoff = initialBackoffMillis;
+        for (int i = 1; i < attempt && backoff < maxBackoffMillis; i++) {
+            backoff <<= 1;
+        }
+        backoff = Math.min(backoff, maxBackoffMillis);
+        return backoff > 1 ? ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1) : backoff;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy[maxAttempts=" + maxAttempts + ", initialBackoffMillis=" + initialBackoffMillis + ", maxBackoffMillis=" + maxBackoffMillis + "]";
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Bounded executor that runs asynchronous session callbacks, usually those of a single SessionFactory.
+ * Idle threads time out so that unused factories hold no threads.
+ *
+ * @author Andres Almiray
+ */
+public class AsyncSessionExecutor extends ThreadPoolExecutor {
+    private final AtomicLong rejectedTaskCount = new AtomicLong(0);
+
+    public AsyncSessionExecutor(@Nonnull String sessionFactoryName, int poolSize, int queueSize) {
+        super(poolSize, poolSize, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new NamedThreadFactory(sessionFactoryName));
+        setRejectedExecutionHandler(new CountingAbortPolicy());
+        allowCoreThreadTimeOut(true);
+    }
+
+    public long getRejectedTaskCount() {
+        return rejectedTaskCount.get();
+    }
+
+    private class CountingAbortPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejectedTaskCount.incrementAndGet();
+            throw new RejectedExecutionException("Too many pending session callbacks; queue holds " + executor.getQueue().size() + " tasks");
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        private NamedThreadFactory(@Nonnull String sessionFactoryName) {
+            this.prefix = "hibernate3-" + requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank") + "-";
+        }
+
+        @Override
+        public Thread newThread(@Nonnull Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package org.codehaus.griffon.runtime.hibernate3;
 
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import griffon.core.GriffonApplication;
 import griffon.core.env.Metadata;
 import griffon.core.injection.Injector;
@@ -25,6 +26,7 @@ import griffon.plugins.datasource.DataSourceFactory;
 import griffon.plugins.datasource.DataSourceStorage;
 import griffon.plugins.hibernate3.Hibernate3Bootstrap;
 import griffon.plugins.hibernate3.Hibernate3Factory;
+import griffon.plugins.hibernate3.RetryPolicy;
 import griffon.plugins.hibernate3.events.Hibernate3ConfigurationAvailableEvent;
 import griffon.plugins.hibernate3.events.Hibernate3ConnectEndEvent;
 import griffon.plugins.hibernate3.events.Hibernate3ConnectStartEvent;
@@ -33,29 +35,53 @@ import griffon.plugins.hibernate3.events.Hibernate3DisconnectStartEvent;
 import griffon.plugins.monitor.MBeanManager;
 import griffon.util.CollectionUtils;
 import org.codehaus.griffon.runtime.core.storage.AbstractObjectFactory;
+import org.codehaus.griffon.runtime.hibernate3.internal.ConnectionPoolMetrics;
+import org.codehaus.griffon.runtime.hibernate3.internal.DataSourceConnectionProvider;
 import org.codehaus.griffon.runtime.hibernate3.internal.HibernateConfigurationHelper;
+import org.codehaus.griffon.runtime.hibernate3.internal.QueryPrecompiler;
+import org.codehaus.griffon.runtime.hibernate3.internal.SchemaFingerprint;
 import org.codehaus.griffon.runtime.hibernate3.monitor.SessionFactoryMonitor;
+import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import static griffon.util.ConfigUtils.getConfigValue;
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /**
  * @author Andres Almiray
  */
 public class DefaultHibernate3Factory extends AbstractObjectFactory<SessionFactory> implements Hibernate3Factory {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultHibernate3Factory.class);
     private static final String ERROR_SESSION_FACTORY_NAME_BLANK = "Argument 'sessionFactoryName' must not be blank";
+    private static final int DEFAULT_ASYNC_POOL_SIZE = 4;
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_POOL_OVERFLOW_TIMEOUT = 30000;
+    private static final int DEFAULT_REPLICA_HEALTH_CHECK_INTERVAL = 10000;
+    private static final int DEFAULT_RETRY_BACKOFF = 50;
+    private static final int DEFAULT_RETRY_MAX_BACKOFF = 1000;
+    private static final int DEFAULT_SHUTDOWN_TIMEOUT = 30000;
+    private static final String SCHEMA_FINGERPRINT = "fingerprint";
     private final Set<String> sessionFactoryNames = new LinkedHashSet<>();
 
     @Inject
@@ -115,32 +141,93 @@ public class DefaultHibernate3Factory extends AbstractObjectFactory<SessionFacto
         Map<String, Object> config = narrowConfig(name);
         event(Hibernate3ConnectStartEvent.of(name, config));
 
-        Configuration configuration = createConfiguration(config, name);
-        createSchema(name, config, configuration);
-
-        SessionFactory sessionFactory = new RecordingSessionFactory(configuration.buildSessionFactory());
+        RecordingSessionFactory sessionFactory = null;
+        SessionFactory hibernateSessionFactory = null;
+        AsyncSessionExecutor asyncExecutor = null;
+        ReplicaRouter replicaRouter = null;
+        Configuration configuration = null;
+        try {
+            configuration = createConfiguration(config, name);
+            createSchema(name, config, configuration);
+            hibernateSessionFactory = configuration.buildSessionFactory();
+            asyncExecutor = createAsyncExecutor(name, config);
+            replicaRouter = createReplicaRouter(name, config);
+            sessionFactory = RecordingSessionFactory.builder(hibernateSessionFactory)
+                .asyncExecutor(asyncExecutor)
+                .slowOperationDetector(createSlowOperationDetector(name, config))
+                .sessionLimiter(createSessionLimiter(name, config, hibernateSessionFactory))
+                .replicaRouter(replicaRouter)
+                .retryPolicy(createRetryPolicy(name, config))
+                .trackOpenSessions(getConfigValueAsBoolean(config, "trackOpenSessions", false))
+                .build();
+
+            if (getConfigValueAsBoolean(config, "jmx", true)) {
+                registerMBeans(name, sessionFactory);
+                if (replicaRouter != null) {
+                    for (Map.Entry<String, RecordingSessionFactory> replica : replicaRouter.getReplicas().entrySet()) {
+                        registerMBeans(name + ".replica." + replica.getKey(), replica.getValue());
+                    }
+                }
+            }
 
+            Session session = null;
+            try {
+                session = openSession(name, sessionFactory);
+                for (Object o : injector.getInstances(Hibernate3Bootstrap.class)) {
+                    ((Hibernate3Bootstrap) o).init(name, session);
+                }
+            } finally {
+                if (session != null) {
+                    session.close();
+                }
+            }
 
-        if (getConfigValueAsBoolean(config, "jmx", true)) {
-            sessionFactory = new JMXAwareSessionFactory(sessionFactory);
-            registerMBeans(name, (JMXAwareSessionFactory) sessionFactory);
+            precompileQueries(name, config, hibernateSessionFactory);
+        } catch (RuntimeException | Error e) {
+            // nobody will ever call destroy() for a SessionFactory that failed to start
+            abandon(name, e, hibernateSessionFactory, asyncExecutor, replicaRouter, sessionFactory);
+            throw e;
+        } finally {
+            if (configuration != null) {
+                DataSourceConnectionProvider.unbind(configuration);
+            }
         }
 
+        event(Hibernate3ConnectEndEvent.of(name, config, sessionFactory));
+        return sessionFactory;
+    }
 
-        Session session = null;
+    private void abandon(@Nonnull String name, @Nonnull Throwable failure, @Nullable SessionFactory hibernateSessionFactory, @Nullable AsyncSessionExecutor asyncExecutor, @Nullable ReplicaRouter replicaRouter, @Nullable RecordingSessionFactory sessionFactory) {
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdownNow();
+        }
+        if (replicaRouter != null) {
+            replicaRouter.shutdown();
+            closeReplicas(replicaRouter.getReplicas(), failure);
+        }
+        if (hibernateSessionFactory != null) {
+            closeSessionFactory(name, hibernateSessionFactory);
+        }
         try {
-            session = openSession(name, sessionFactory);
-            for (Object o : injector.getInstances(Hibernate3Bootstrap.class)) {
-                ((Hibernate3Bootstrap) o).init(name, session);
-            }
-        } finally {
-            if (session != null) {
-                session.close();
+            if (sessionFactory != null) {
+                unregisterMBeans(sessionFactory);
             }
+            closeDataSource(name);
+        } catch (RuntimeException e) {
+            failure.addSuppressed(e);
         }
+    }
 
-        event(Hibernate3ConnectEndEvent.of(name, config, sessionFactory));
-        return sessionFactory;
+    private void closeReplicas(@Nonnull Map<String, RecordingSessionFactory> replicas, @Nonnull Throwable failure) {
+        for (Map.Entry<String, RecordingSessionFactory> replica : replicas.entrySet()) {
+            closeSessionFactory(replica.getKey(), replica.getValue().getDelegate());
+            try {
+                unregisterMBeans(replica.getValue());
+                closeDataSource(replica.getKey());
+            } catch (RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
     }
 
     @Override
@@ -149,9 +236,15 @@ public class DefaultHibernate3Factory extends AbstractObjectFactory<SessionFacto
         Map<String, Object> config = narrowConfig(name);
         event(Hibernate3DisconnectStartEvent.of(name, config, instance));
 
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(instance);
+        if (recordingSessionFactory != null) {
+            drain(name, config, recordingSessionFactory);
+        }
+
         Session session = null;
         try {
-            session = openSession(name, instance);
+            // a draining factory rejects new sessions, bootstrap hooks get theirs from the underlying factory
+            session = openSession(name, recordingSessionFactory != null ? recordingSessionFactory.getDelegate() : instance);
             for (Object o : injector.getInstances(Hibernate3Bootstrap.class)) {
                 ((Hibernate3Bootstrap) o).destroy(name, session);
             }
@@ -161,22 +254,92 @@ public class DefaultHibernate3Factory extends AbstractObjectFactory<SessionFacto
             }
         }
 
+        ReplicaRouter replicaRouter = recordingSessionFactory != null ? recordingSessionFactory.getReplicaRouter() : null;
+        if (replicaRouter != null) {
+            replicaRouter.shutdown();
+        }
+
+        // stops cache providers, persisters and statistics before the connections go away
+        closeSessionFactory(name, recordingSessionFactory != null ? recordingSessionFactory.getDelegate() : instance);
+        if (replicaRouter != null) {
+            for (Map.Entry<String, RecordingSessionFactory> replica : replicaRouter.getReplicas().entrySet()) {
+                closeSessionFactory(replica.getKey(), replica.getValue().getDelegate());
+            }
+        }
+
         closeDataSource(name);
 
-        if (getConfigValueAsBoolean(config, "jmx", true)) {
-            unregisterMBeans((JMXAwareSessionFactory) instance);
+        if (recordingSessionFactory != null) {
+            unregisterMBeans(recordingSessionFactory);
+        }
+        if (replicaRouter != null) {
+            for (Map.Entry<String, RecordingSessionFactory> replica : replicaRouter.getReplicas().entrySet()) {
+                closeDataSource(replica.getKey());
+                unregisterMBeans(replica.getValue());
+            }
         }
 
         event(Hibernate3DisconnectEndEvent.of(name, config));
     }
 
-    private void registerMBeans(@Nonnull String name, @Nonnull JMXAwareSessionFactory sessionFactory) {
-        RecordingSessionFactory recordingSessionFactory = (RecordingSessionFactory) sessionFactory.getDelegate();
-        SessionFactoryMonitor sessionFactoryMonitor = new SessionFactoryMonitor(metadata, recordingSessionFactory, name);
+    private void closeSessionFactory(@Nonnull String name, @Nonnull SessionFactory sessionFactory) {
+        try {
+            if (!sessionFactory.isClosed()) {
+                sessionFactory.close();
+            }
+        } catch (HibernateException e) {
+            LOG.warn("Could not close sessionFactory '" + name + "'", e);
+        }
+    }
+
+    private void drain(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull RecordingSessionFactory sessionFactory) {
+        List<RecordingSessionFactory> sessionFactories = new ArrayList<>();
+        sessionFactories.add(sessionFactory);
+        if (sessionFactory.getReplicaRouter() != null) {
+            sessionFactories.addAll(sessionFactory.getReplicaRouter().getReplicas().values());
+        }
+        for (RecordingSessionFactory candidate : sessionFactories) {
+            candidate.drain();
+        }
+        if (sessionFactory.getAsyncExecutor() != null) {
+            sessionFactory.getAsyncExecutor().shutdown();
+        }
+
+        // primary and replicas share a single deadline
+        long deadline = System.nanoTime() + MILLISECONDS.toNanos(getConfigValueAsInt(config, "shutdownTimeout", DEFAULT_SHUTDOWN_TIMEOUT));
+        try {
+            for (RecordingSessionFactory candidate : sessionFactories) {
+                candidate.awaitSessions(deadline - System.nanoTime(), NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // whatever is still open gets its connections pulled from under it
+        int openSessionCount = 0;
+        List<RecordingSessionFactory.OpenSession> openSessions = new ArrayList<>();
+        for (RecordingSessionFactory candidate : sessionFactories) {
+            openSessionCount += candidate.getSessionCount();
+            openSessions.addAll(candidate.getOpenSessions());
+        }
+        if (openSessionCount > 0) {
+            if (openSessions.isEmpty()) {
+                LOG.warn("Force-closing sessionFactory '{}' with {} session(s) still open", name, openSessionCount);
+            } else {
+                LOG.warn("Force-closing sessionFactory '{}' with {} session(s) still open, opened by {}", name, openSessionCount, openSessions);
+            }
+            if (sessionFactory.getAsyncExecutor() != null) {
+                sessionFactory.getAsyncExecutor().shutdownNow();
+            }
+        }
+    }
+
+    private void registerMBeans(@Nonnull String name, @Nonnull RecordingSessionFactory sessionFactory) {
+        SessionFactoryMonitor sessionFactoryMonitor = new SessionFactoryMonitor(metadata, sessionFactory, name);
         sessionFactory.addObjectName(mBeanManager.registerMBean(sessionFactoryMonitor, false).getCanonicalName());
     }
 
-    private void unregisterMBeans(@Nonnull JMXAwareSessionFactory sessionFactory) {
+    private void unregisterMBeans(@Nonnull RecordingSessionFactory sessionFactory) {
         for (String objectName : sessionFactory.getObjectNames()) {
             mBeanManager.unregisterMBean(objectName);
         }
@@ -186,8 +349,13 @@ public class DefaultHibernate3Factory extends AbstractObjectFactory<SessionFacto
     @Nonnull
     @SuppressWarnings("ConstantConditions")
     protected Configuration createConfiguration(@Nonnull Map<String, Object> config, @Nonnull String dataSourceName) {
+        return createConfiguration(config, dataSourceName, dataSourceName);
+    }
+
+    protected Configuration createConfiguration(@Nonnull Map<String, Object> config, @Nonnull String sessionFactoryName, @Nonnull String dataSourceName) {
         DataSource dataSource = getDataSource(dataSourceName);
-        HibernateConfigurationHelper configHelper = new HibernateConfigurationHelper(getApplication(), config, dataSourceName, dataSource);
+        HibernateConfigurationHelper configHelper = new HibernateConfigurationHelper(getApplication(), config, sessionFactoryName, dataSourceName, dataSource);
+        configHelper.setDataSourceConfig(dataSourceFactory.getConfigurationFor(dataSourceName));
         Configuration configuration = configHelper.buildConfiguration();
         getApplication().getEventRouter().publishEvent(Hibernate3ConfigurationAvailableEvent.of(CollectionUtils.<String, Object>map()
             .e("configuration", configuration)
@@ -196,8 +364,128 @@ public class DefaultHibernate3Factory extends AbstractObjectFactory<SessionFacto
         return configuration;
     }
 
+    @Nonnull
+    protected AsyncSessionExecutor createAsyncExecutor(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config) {
+        int poolSize = getConfigValueAsInt(config, "asyncPoolSize", DEFAULT_ASYNC_POOL_SIZE);
+        int queueSize = getConfigValueAsInt(config, "asyncQueueSize", DEFAULT_ASYNC_QUEUE_SIZE);
+        return new AsyncSessionExecutor(sessionFactoryName, Math.max(1, poolSize), Math.max(1, queueSize));
+    }
+
+    protected void precompileQueries(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config, @Nonnull SessionFactory sessionFactory) {
+        Iterable<?> queries = QueryPrecompiler.queriesOf(sessionFactoryName, getConfigValue(config, "precompileQueries", null));
+        if (sessionFactory instanceof SessionFactoryImplementor) {
+            new QueryPrecompiler(sessionFactoryName, (SessionFactoryImplementor) sessionFactory).precompile(queries);
+        }
+    }
+
+    @Nullable
+    protected SlowOperationDetector createSlowOperationDetector(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config) {
+        int sessionThreshold = getConfigValueAsInt(config, "slowSessionThreshold", 0);
+        int queryThreshold = getConfigValueAsInt(config, "slowQueryThreshold", 0);
+        if (sessionThreshold <= 0 && queryThreshold <= 0) {
+            return null;
+        }
+        return new SlowOperationDetector(sessionFactoryName, sessionThreshold, queryThreshold);
+    }
+
+    @Nullable
+    protected SessionLimiter createSessionLimiter(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config, @Nonnull SessionFactory sessionFactory) {
+        String policy = String.valueOf(getConfigValue(config, "poolOverflow", "warn"));
+        if ("ignore".equalsIgnoreCase(policy)) {
+            return null;
+        }
+        SessionLimiter.Policy limiterPolicy = null;
+        for (SessionLimiter.Policy candidate : SessionLimiter.Policy.values()) {
+            if (candidate.name().equalsIgnoreCase(policy)) {
+                limiterPolicy = candidate;
+            }
+        }
+        if (limiterPolicy == null) {
+            throw new IllegalArgumentException("Invalid value for 'poolOverflow' on sessionFactory '" + sessionFactoryName + "': " + policy +
+                ". Must be one of [warn, block, ignore]");
+        }
+
+        int maxSessions = getConfigValueAsInt(config, "maxSessions", -1);
+        if (maxSessions <= 0) {
+            ConnectionPoolMetrics poolMetrics = DataSourceConnectionProvider.metricsOf(sessionFactory);
+            maxSessions = poolMetrics != null ? poolMetrics.getMaximumPoolSize() : -1;
+        }
+        if (maxSessions <= 0) {
+            return null;
+        }
+
+        long timeout = getConfigValueAsInt(config, "poolOverflowTimeout", DEFAULT_POOL_OVERFLOW_TIMEOUT);
+        return new SessionLimiter(sessionFactoryName, maxSessions, limiterPolicy, timeout);
+    }
+
+    @Nonnull
+    protected RetryPolicy createRetryPolicy(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config) {
+        int attempts = getConfigValueAsInt(config, "retryAttempts", 1);
+        if (attempts <= 1) {
+            return RetryPolicy.NONE;
+        }
+        int backoff = getConfigValueAsInt(config, "retryBackoff", DEFAULT_RETRY_BACKOFF);
+        int maxBackoff = getConfigValueAsInt(config, "retryMaxBackoff", DEFAULT_RETRY_MAX_BACKOFF);
+        return new RetryPolicy(attempts, Math.max(0, backoff), Math.max(0, maxBackoff));
+    }
+
+    @Nullable
+    protected ReplicaRouter createReplicaRouter(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config) {
+        Object replicaNames = getConfigValue(config, "replicas", null);
+        if (!(replicaNames instanceof Iterable)) {
+            return null;
+        }
+
+        Map<String, RecordingSessionFactory> replicas = new LinkedHashMap<>();
+        String dataSourceName = null;
+        try {
+            for (Object replicaName : (Iterable<?>) replicaNames) {
+                dataSourceName = String.valueOf(replicaName);
+                // replicas share the settings and mappings of their primary but leave the schema alone
+                Configuration configuration = createConfiguration(config, sessionFactoryName, dataSourceName);
+                SessionFactory replica;
+                try {
+                    replica = configuration.buildSessionFactory();
+                } finally {
+                    DataSourceConnectionProvider.unbind(configuration);
+                }
+                replicas.put(dataSourceName, RecordingSessionFactory.builder(replica)
+                    .slowOperationDetector(createSlowOperationDetector(dataSourceName, config))
+                    .sessionLimiter(createSessionLimiter(dataSourceName, config, replica))
+                    .trackOpenSessions(getConfigValueAsBoolean(config, "trackOpenSessions", false))
+                    .build());
+                precompileQueries(dataSourceName, config, replica);
+            }
+        } catch (RuntimeException | Error e) {
+            closeReplicas(replicas, e);
+            if (dataSourceName != null && !replicas.containsKey(dataSourceName)) {
+                try {
+                    closeDataSource(dataSourceName);
+                } catch (RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        if (replicas.isEmpty()) {
+            return null;
+        }
+
+        String balancing = String.valueOf(getConfigValue(config, "replicaBalancing", "round-robin"));
+        ReplicaRouter replicaRouter = new ReplicaRouter(sessionFactoryName, replicas, ReplicaRouter.Balancing.valueOf(balancing.toUpperCase().replace('-', '_')));
+        replicaRouter.start(getConfigValueAsInt(config, "replicaHealthCheckInterval", DEFAULT_REPLICA_HEALTH_CHECK_INTERVAL));
+        return replicaRouter;
+    }
+
     protected void createSchema(@Nonnull String dataSourceName, @Nonnull Map<String, Object> config, @Nonnull Configuration configuration) {
-        configuration.setProperty("hibernate.hbm2ddl.auto", getConfigValue(config, "schema", "create-drop"));
+        String schema = getConfigValue(config, "schema", "create-drop");
+        if (SCHEMA_FINGERPRINT.equals(schema)) {
+            // schema work happens here, once, instead of on every SessionFactory build
+            configuration.getProperties().remove(Environment.HBM2DDL_AUTO);
+            new SchemaFingerprint(dataSourceName, configuration, getDataSource(dataSourceName)).synchronize();
+            return;
+        }
+        configuration.setProperty(Environment.HBM2DDL_AUTO, schema);
     }
 
     protected void closeDataSource(@Nonnull String dataSourceName) {
@@ -19,20 +19,53 @@ package org.codehaus.griffon.runtime.hibernate3;
 
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
+import griffon.exceptions.GriffonException;
 import griffon.plugins.hibernate3.Hibernate3Callback;
 import griffon.plugins.hibernate3.Hibernate3Factory;
 import griffon.plugins.hibernate3.Hibernate3Handler;
+import griffon.plugins.hibernate3.Hibernate3Results;
+import griffon.plugins.hibernate3.Hibernate3RowCallback;
+import griffon.plugins.hibernate3.Hibernate3StatelessCallback;
 import griffon.plugins.hibernate3.Hibernate3Storage;
+import griffon.plugins.hibernate3.Propagation;
+import griffon.plugins.hibernate3.RetryPolicy;
 import griffon.plugins.hibernate3.exceptions.RuntimeHibernate3Exception;
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.dialect.Dialect;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
+import static org.codehaus.griffon.runtime.hibernate3.internal.TransientFailures.isTransient;
 
 /**
  * @author Andres Almiray
@@ -41,9 +74,20 @@ public class DefaultHibernate3Handler implements Hibernate3Handler {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultHibernate3Handler.class);
     private static final String ERROR_SESSION_FACTORY_NAME_BLANK = "Argument 'sessionFactoryName' must not be blank";
     private static final String ERROR_CALLBACK_NULL = "Argument 'callback' must not be null";
+    private static final int DEFAULT_STREAM_FETCH_SIZE = 500;
+    private static final SessionMetrics NO_METRICS = new SessionMetrics();
+    private static final int DEFAULT_ASYNC_POOL_SIZE = 4;
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
 
     private final Hibernate3Factory hibernate3Factory;
     private final Hibernate3Storage hibernate3Storage;
+    private final ConcurrentMap<String, FutureTask<SessionFactory>> pendingSessionFactories = new ConcurrentHashMap<>();
+    private final ThreadLocal<Map<String, SessionHolder>> boundSessions = new ThreadLocal<>();
+    private final ThreadLocal<Future<?>> asyncFutures = new ThreadLocal<>();
+    // builds SessionFactories for asynchronous callbacks and runs those of SessionFactories without an executor of their own
+    private final AsyncSessionExecutor asyncExecutor = new AsyncSessionExecutor("async", DEFAULT_ASYNC_POOL_SIZE, DEFAULT_ASYNC_QUEUE_SIZE);
+    private final Object shutdownLock = new Object();
+    private volatile boolean shutdown;
 
     @Inject
     public DefaultHibernate3Handler(@Nonnull Hibernate3Factory hibernate3Factory, @Nonnull Hibernate3Storage hibernate3Storage) {
@@ -59,31 +103,505 @@ public class DefaultHibernate3Handler implements Hibernate3Handler {
 
     @Nullable
     @Override
-    @SuppressWarnings("ThrowFromFinallyBlock")
     public <R> R withHbm3Session(@Nonnull String sessionFactoryName, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        return withHbm3Session(sessionFactoryName, Propagation.REQUIRED, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm3Session(@Nonnull Propagation propagation, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        return withHbm3Session(DefaultHibernate3Factory.KEY_DEFAULT, propagation, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm3Session(@Nonnull String sessionFactoryName, @Nonnull Propagation propagation, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        requireNonNull(propagation, "Argument 'propagation' must not be null");
+        return withHbm3Session(sessionFactoryName, propagation, null, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm3Session(@Nonnull RetryPolicy retryPolicy, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        return withHbm3Session(DefaultHibernate3Factory.KEY_DEFAULT, retryPolicy, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm3Session(@Nonnull String sessionFactoryName, @Nonnull RetryPolicy retryPolicy, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        requireNonNull(retryPolicy, "Argument 'retryPolicy' must not be null");
+        return withHbm3Session(sessionFactoryName, Propagation.REQUIRED, retryPolicy, callback);
+    }
+
+    @Nullable
+    private <R> R withHbm3Session(@Nonnull String sessionFactoryName, @Nonnull Propagation propagation, @Nullable RetryPolicy retryPolicy, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
         requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
         requireNonNull(callback, ERROR_CALLBACK_NULL);
 
+        if (propagation == Propagation.REQUIRED) {
+            // writes cannot join a read-only session, it would neither flush nor commit them
+            // a joined callback is never retried on its own, only the enclosing transaction may be
+            SessionHolder current = currentSession(sessionFactoryName);
+            if (current != null && !current.readOnly) {
+                return joinSession(sessionFactoryName, current, callback);
+            }
+        }
+
         SessionFactory sf = getSessionFactory(sessionFactoryName);
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sf);
+        Dialect dialect = recordingSessionFactory != null ? recordingSessionFactory.getDialect() : null;
+        if (retryPolicy == null) {
+            retryPolicy = recordingSessionFactory != null ? recordingSessionFactory.getRetryPolicy() : RetryPolicy.NONE;
+        }
+
+        SessionMetrics metrics = metricsOf(sf);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return withNewSession(sessionFactoryName, sf, callback);
+            } catch (RuntimeHibernate3Exception e) {
+                if (retryPolicy.getMaxAttempts() == 1 || !isTransient(e, dialect) || isCancelled()) {
+                    throw e;
+                }
+                if (attempt >= retryPolicy.getMaxAttempts()) {
+                    metrics.retriesExhausted();
+                    LOG.warn("Giving up on session '{}' after {} attempts", sessionFactoryName, attempt);
+                    throw e;
+                }
+
+                long backoff = retryPolicy.getBackoffMillis(attempt);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Retrying statements on session '{}' in {}ms after attempt {} failed with {}", sessionFactoryName, backoff, attempt, String.valueOf(e.getCause()));
+                }
+                metrics.transactionRetried();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    private <R> R withNewSession(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        SessionMetrics metrics = metricsOf(sf);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Executing statements on session '{}'", sessionFactoryName);
         }
         Session session = sf.openSession();
+        SessionHolder holder = new SessionHolder(session, false);
+        SessionHolder suspended = bindSession(sessionFactoryName, holder);
         try {
             session.beginTransaction();
             return callback.handle(sessionFactoryName, session);
         } catch (Exception e) {
+            metrics.callbackFailed();
+            // same as a failing nested callback, none of the work of a failed callback may be committed
+            holder.rollbackOnly = true;
             throw new RuntimeHibernate3Exception(sessionFactoryName, e);
         } finally {
+            unbindSession(sessionFactoryName, suspended);
             try {
-                if (!session.getTransaction().wasRolledBack()) {
-                    session.getTransaction().commit();
+                Transaction transaction = session.getTransaction();
+                if (transaction.wasRolledBack()) {
+                    metrics.transactionRolledBack();
+                } else if (holder.rollbackOnly || isCancelled()) {
+                    // nobody is waiting for the result of a cancelled callback, it must not leave anything behind
+                    transaction.rollback();
+                    metrics.transactionRolledBack();
+                } else {
+                    commit(sessionFactoryName, transaction, metrics);
+                }
+            } catch (Exception e) {
+                throw new RuntimeHibernate3Exception(sessionFactoryName, e);
+            } finally {
+                try {
+                    session.close();
+                } catch (Exception e) {
+                    throw new RuntimeHibernate3Exception(sessionFactoryName, e);
+                }
+            }
+        }
+    }
+
+    private static void commit(@Nonnull String sessionFactoryName, @Nonnull Transaction transaction, @Nonnull SessionMetrics metrics) {
+        try {
+            transaction.commit();
+            metrics.transactionCommitted();
+        } catch (RuntimeException e) {
+            // deadlocks, lock timeouts and stale state usually surface here, when the session is flushed
+            try {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            } catch (RuntimeException re) {
+                LOG.warn("Could not roll back transaction of session '" + sessionFactoryName + "' after a failed commit", re);
+                e.addSuppressed(re);
+            }
+            metrics.transactionRolledBack();
+            throw e;
+        }
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm3ReadOnlySession(@Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        return withHbm3ReadOnlySession(DefaultHibernate3Factory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm3ReadOnlySession(@Nonnull String sessionFactoryName, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        // reads join whatever session is open on this thread, they also get to see its pending changes
+        SessionHolder current = currentSession(sessionFactoryName);
+        if (current != null) {
+            return joinSession(sessionFactoryName, current, callback);
+        }
+        return withReadOnlySessionOnReplica(sessionFactoryName, callback);
+    }
+
+    @Nullable
+    private <R> R withReadOnlySessionOnReplica(@Nonnull String sessionFactoryName, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        SessionFactory sf = getSessionFactory(sessionFactoryName);
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sf);
+        ReplicaRouter replicaRouter = recordingSessionFactory != null ? recordingSessionFactory.getReplicaRouter() : null;
+        if (replicaRouter != null) {
+            RecordingSessionFactory replica = replicaRouter.select();
+            if (replica != null) {
+                Session session;
+                try {
+                    session = openReadOnlySession(sessionFactoryName, replica);
+                } catch (RuntimeHibernate3Exception e) {
+                    if (!replicaRouter.failed(replica, e)) {
+                        throw e;
+                    }
+                    // the replica is unreachable, reads fall back to the primary
+                    return withReadOnlySession(sessionFactoryName, sf, openReadOnlySession(sessionFactoryName, sf), callback);
+                }
+
+                try {
+                    return withReadOnlySession(sessionFactoryName, replica, session, callback);
+                } catch (RuntimeHibernate3Exception e) {
+                    // the callback may have had side effects by now (rows handed to a consumer, for one), it is never replayed
+                    replicaRouter.failed(replica, e);
+                    throw e;
                 }
+            }
+        }
+        return withReadOnlySession(sessionFactoryName, sf, openReadOnlySession(sessionFactoryName, sf), callback);
+    }
+
+    /**
+     * Opens a session and begins its transaction, which is when a connection is acquired. Nothing has run on the
+     * session yet if this fails.
+     */
+    @Nonnull
+    private static Session openReadOnlySession(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf) throws RuntimeHibernate3Exception {
+        Session session;
+        try {
+            session = sf.openSession();
+        } catch (RuntimeException e) {
+            throw new RuntimeHibernate3Exception(sessionFactoryName, e);
+        }
+        try {
+            // nothing is ever flushed, loaded entities skip snapshots and dirty checking
+            session.setFlushMode(FlushMode.MANUAL);
+            session.setDefaultReadOnly(true);
+            session.beginTransaction();
+            return session;
+        } catch (RuntimeException e) {
+            try {
                 session.close();
+            } catch (RuntimeException ce) {
+                e.addSuppressed(ce);
+            }
+            throw new RuntimeHibernate3Exception(sessionFactoryName, e);
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    private <R> R withReadOnlySession(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf, @Nonnull Session session, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        SessionMetrics metrics = metricsOf(sf);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Executing read-only statements on session '{}'", sessionFactoryName);
+        }
+        SessionHolder suspended = bindSession(sessionFactoryName, new SessionHolder(session, true));
+        try {
+            return callback.handle(sessionFactoryName, session);
+        } catch (Exception e) {
+            metrics.callbackFailed();
+            throw new RuntimeHibernate3Exception(sessionFactoryName, e);
+        } finally {
+            unbindSession(sessionFactoryName, suspended);
+            try {
+                if (session.getTransaction().isActive()) {
+                    session.getTransaction().rollback();
+                    metrics.transactionRolledBack();
+                }
+            } catch (Exception e) {
+                throw new RuntimeHibernate3Exception(sessionFactoryName, e);
+            } finally {
+                try {
+                    session.close();
+                } catch (Exception e) {
+                    throw new RuntimeHibernate3Exception(sessionFactoryName, e);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm3StatelessSession(@Nonnull Hibernate3StatelessCallback<R> callback) throws RuntimeHibernate3Exception {
+        return withHbm3StatelessSession(DefaultHibernate3Factory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    public <R> R withHbm3StatelessSession(@Nonnull String sessionFactoryName, @Nonnull Hibernate3StatelessCallback<R> callback) throws RuntimeHibernate3Exception {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        SessionFactory sf = getSessionFactory(sessionFactoryName);
+        SessionMetrics metrics = metricsOf(sf);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Executing statements on stateless session '{}'", sessionFactoryName);
+        }
+        StatelessSession session = sf.openStatelessSession();
+        try {
+            session.beginTransaction();
+            return callback.handle(sessionFactoryName, session);
+        } catch (Exception e) {
+            metrics.callbackFailed();
+            throw new RuntimeHibernate3Exception(sessionFactoryName, e);
+        } finally {
+            try {
+                if (!session.getTransaction().wasRolledBack()) {
+                    commit(sessionFactoryName, session.getTransaction(), metrics);
+                } else {
+                    metrics.transactionRolledBack();
+                }
             } catch (Exception e) {
                 throw new RuntimeHibernate3Exception(sessionFactoryName, e);
+            } finally {
+                try {
+                    session.close();
+                } catch (Exception e) {
+                    throw new RuntimeHibernate3Exception(sessionFactoryName, e);
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withHbm3SessionAsync(@Nonnull Hibernate3Callback<R> callback) {
+        return withHbm3SessionAsync(DefaultHibernate3Factory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withHbm3SessionAsync(@Nonnull final String sessionFactoryName, @Nonnull final Hibernate3Callback<R> callback) {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        // the callback completes the very future handed to the caller, cancelling it reaches the callback
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        SessionFactory sessionFactory = hibernate3Storage.get(sessionFactoryName);
+        if (sessionFactory != null) {
+            submitAsync(sessionFactory, sessionFactoryName, callback, future);
+            return future;
+        }
+
+        // building the SessionFactory blocks, keep it off the calling thread as well as off the common pool
+        try {
+            CompletableFuture.supplyAsync(() -> getSessionFactory(sessionFactoryName), asyncExecutor)
+                .whenComplete((sf, t) -> {
+                    if (t != null) {
+                        future.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+                    } else {
+                        submitAsync(sf, sessionFactoryName, callback, future);
+                    }
+                });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <R> void submitAsync(@Nonnull SessionFactory sessionFactory, @Nonnull final String sessionFactoryName, @Nonnull final Hibernate3Callback<R> callback, @Nonnull final CompletableFuture<R> future) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        Executor executor = recordingSessionFactory != null && recordingSessionFactory.getAsyncExecutor() != null ?
+            recordingSessionFactory.getAsyncExecutor() : asyncExecutor;
+
+        try {
+            executor.execute(() -> {
+                if (future.isCancelled()) {
+                    return;
+                }
+                asyncFutures.set(future);
+                try {
+                    future.complete(withHbm3Session(sessionFactoryName, callback));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    asyncFutures.remove();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private boolean isCancelled() {
+        Future<?> future = asyncFutures.get();
+        return future != null && future.isCancelled();
+    }
+
+    @Nonnull
+    @Override
+    public <R> Hibernate3Results<R> withHbm3Sessions(@Nonnull Collection<String> sessionFactoryNames, @Nonnull Hibernate3Callback<R> callback) {
+        return withHbm3Sessions(sessionFactoryNames, 0L, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> Hibernate3Results<R> withHbm3Sessions(@Nonnull Collection<String> sessionFactoryNames, long timeoutMillis, @Nonnull Hibernate3Callback<R> callback) {
+        requireNonNull(sessionFactoryNames, "Argument 'sessionFactoryNames' must not be null");
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        for (String sessionFactoryName : sessionFactoryNames) {
+            requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        }
+
+        // scatter: each callback runs on the bounded executor of its own SessionFactory
+        Map<String, CompletableFuture<R>> futures = new LinkedHashMap<>();
+        for (String sessionFactoryName : new LinkedHashSet<>(sessionFactoryNames)) {
+            futures.put(sessionFactoryName, withHbm3SessionAsync(sessionFactoryName, callback));
+        }
+
+        // gather: every SessionFactory gets the same deadline, a slow one does not eat into the time of the others
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Map<String, R> results = new LinkedHashMap<>();
+        Map<String, RuntimeHibernate3Exception> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<R>> entry : futures.entrySet()) {
+            String sessionFactoryName = entry.getKey();
+            CompletableFuture<R> future = entry.getValue();
+            try {
+                if (timeoutMillis > 0) {
+                    results.put(sessionFactoryName, future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } else {
+                    results.put(sessionFactoryName, future.get());
+                }
+            } catch (ExecutionException e) {
+                failures.put(sessionFactoryName, asRuntimeHibernate3Exception(sessionFactoryName, e.getCause()));
+            } catch (TimeoutException e) {
+                // the callback keeps running, cancelling makes it roll back instead of commit
+                future.cancel(false);
+                failures.put(sessionFactoryName, new RuntimeHibernate3Exception(sessionFactoryName, e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(false);
+                failures.put(sessionFactoryName, new RuntimeHibernate3Exception(sessionFactoryName, e));
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            LOG.warn("Callback failed on {} of {} sessionFactories: {}", failures.size(), futures.size(), failures.keySet());
+        }
+        return new Hibernate3Results<>(results, failures);
+    }
+
+    @Nonnull
+    private static RuntimeHibernate3Exception asRuntimeHibernate3Exception(@Nonnull String sessionFactoryName, @Nonnull Throwable t) {
+        if (t instanceof RuntimeHibernate3Exception) {
+            return (RuntimeHibernate3Exception) t;
+        }
+        return new RuntimeHibernate3Exception(sessionFactoryName, t instanceof Exception ? (Exception) t : new ExecutionException(t));
+    }
+
+    @Override
+    public <R> long streamHbm3(@Nonnull String hql, @Nonnull Map<String, ?> params, @Nonnull Hibernate3RowCallback<R> callback) throws RuntimeHibernate3Exception {
+        return streamHbm3(DefaultHibernate3Factory.KEY_DEFAULT, hql, params, callback);
+    }
+
+    @Override
+    public <R> long streamHbm3(@Nonnull String sessionFactoryName, @Nonnull final String hql, @Nonnull final Map<String, ?> params, @Nonnull final Hibernate3RowCallback<R> callback) throws RuntimeHibernate3Exception {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonBlank(hql, "Argument 'hql' must not be blank");
+        requireNonNull(params, "Argument 'params' must not be null");
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        Map<String, Object> config = hibernate3Factory.getConfigurationFor(sessionFactoryName);
+        final int fetchSize = Math.max(1, getConfigValueAsInt(config, "streamFetchSize", DEFAULT_STREAM_FETCH_SIZE));
+        final int clearEvery = Math.max(1, getConfigValueAsInt(config, "streamClearEvery", fetchSize));
+
+        // never joins an enclosing session, clearing it would discard its pending changes
+        Long count = withReadOnlySessionOnReplica(sessionFactoryName, (name, session) -> {
+            Query query = session.createQuery(hql)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE);
+            for (Map.Entry<String, ?> param : params.entrySet()) {
+                Object value = param.getValue();
+                if (value instanceof Collection) {
+                    query.setParameterList(param.getKey(), (Collection<?>) value);
+                } else if (value instanceof Object[]) {
+                    query.setParameterList(param.getKey(), (Object[]) value);
+                } else {
+                    query.setParameter(param.getKey(), value);
+                }
+            }
+
+            // forward-only cursor, rows are handed over one at a time and the persistence context is
+            // cleared periodically so that memory stays bounded regardless of the size of the result
+            ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                long rows = 0;
+                while (results.next()) {
+                    Object[] row = results.get();
+                    @SuppressWarnings("unchecked")
+                    R value = (R) (row.length == 1 ? row[0] : row);
+                    callback.handle(name, session, value);
+                    if (++rows % clearEvery == 0) {
+                        session.clear();
+                    }
+                }
+                return rows;
+            } finally {
+                results.close();
+            }
+        });
+        return count != null ? count : 0L;
+    }
+
+    @Override
+    public int flushEvery(@Nonnull Session session, int batchSize, @Nonnull Iterable<?> entities) {
+        requireNonNull(session, "Argument 'session' must not be null");
+        requireNonNull(entities, "Argument 'entities' must not be null");
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Argument 'batchSize' must be greater than zero");
+        }
+
+        int count = 0;
+        for (Object entity : entities) {
+            session.saveOrUpdate(entity);
+            if (++count % batchSize == 0) {
+                session.flush();
+                session.clear();
             }
         }
+        if (count % batchSize != 0) {
+            session.flush();
+            session.clear();
+        }
+        return count;
     }
 
     @Override
@@ -101,13 +619,136 @@ public class DefaultHibernate3Handler implements Hibernate3Handler {
         }
     }
 
+    @Nullable
+    private <R> R joinSession(@Nonnull String sessionFactoryName, @Nonnull SessionHolder holder, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Joining session '{}' already open on this thread", sessionFactoryName);
+        }
+        try {
+            return callback.handle(sessionFactoryName, holder.session);
+        } catch (Exception e) {
+            // the enclosing callback may swallow the failure, its transaction must not commit half of the work
+            holder.rollbackOnly = true;
+            metricsOf(getSessionFactory(sessionFactoryName)).callbackFailed();
+            throw e instanceof RuntimeHibernate3Exception ? (RuntimeHibernate3Exception) e : new RuntimeHibernate3Exception(sessionFactoryName, e);
+        }
+    }
+
+    @Nullable
+    private SessionHolder currentSession(@Nonnull String sessionFactoryName) {
+        Map<String, SessionHolder> sessions = boundSessions.get();
+        return sessions != null ? sessions.get(sessionFactoryName) : null;
+    }
+
+    @Nullable
+    private SessionHolder bindSession(@Nonnull String sessionFactoryName, @Nonnull SessionHolder holder) {
+        Map<String, SessionHolder> sessions = boundSessions.get();
+        if (sessions == null) {
+            sessions = new HashMap<>();
+            boundSessions.set(sessions);
+        }
+        return sessions.put(sessionFactoryName, holder);
+    }
+
+    private void unbindSession(@Nonnull String sessionFactoryName, @Nullable SessionHolder suspended) {
+        Map<String, SessionHolder> sessions = boundSessions.get();
+        if (suspended != null) {
+            sessions.put(sessionFactoryName, suspended);
+        } else {
+            sessions.remove(sessionFactoryName);
+            if (sessions.isEmpty()) {
+                boundSessions.remove();
+            }
+        }
+    }
+
+    @Nonnull
+    private static SessionMetrics metricsOf(@Nonnull SessionFactory sessionFactory) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        return recordingSessionFactory != null ? recordingSessionFactory.getMetrics() : NO_METRICS;
+    }
+
     @Nonnull
-    private SessionFactory getSessionFactory(@Nonnull String sessionFactoryName) {
+    private SessionFactory getSessionFactory(@Nonnull final String sessionFactoryName) {
         SessionFactory sessionFactory = hibernate3Storage.get(sessionFactoryName);
-        if (sessionFactory == null) {
-            sessionFactory = hibernate3Factory.create(sessionFactoryName);
-            hibernate3Storage.set(sessionFactoryName, sessionFactory);
+        if (sessionFactory != null) {
+            return sessionFactory;
+        }
+
+        // single-flight: concurrent first callers wait on the same task instead of building duplicate factories
+        FutureTask<SessionFactory> task = new FutureTask<>(new Callable<SessionFactory>() {
+            @Override
+            public SessionFactory call() {
+                SessionFactory sf = hibernate3Storage.get(sessionFactoryName);
+                if (sf != null) {
+                    return sf;
+                }
+                if (shutdown) {
+                    throw shuttingDown(sessionFactoryName);
+                }
+
+                sf = hibernate3Factory.create(sessionFactoryName);
+                synchronized (shutdownLock) {
+                    if (!shutdown) {
+                        hibernate3Storage.set(sessionFactoryName, sf);
+                        return sf;
+                    }
+                }
+                // shutdown began while building, nobody else would ever close this one
+                hibernate3Factory.destroy(sessionFactoryName, sf);
+                throw shuttingDown(sessionFactoryName);
+            }
+        });
+
+        FutureTask<SessionFactory> pending = pendingSessionFactories.putIfAbsent(sessionFactoryName, task);
+        if (pending == null) {
+            pending = task;
+            try {
+                task.run();
+            } finally {
+                pendingSessionFactories.remove(sessionFactoryName, task);
+            }
+        }
+
+        try {
+            return pending.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new GriffonException("Could not create sessionFactory '" + sessionFactoryName + "'", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GriffonException("Interrupted while waiting for sessionFactory '" + sessionFactoryName + "'", e);
+        }
+    }
+
+    /**
+     * Refuses to build SessionFactories from now on. Those already built keep serving callbacks until they are closed,
+     * those still being built are closed as soon as they are ready.
+     */
+    public void shutdown() {
+        synchronized (shutdownLock) {
+            shutdown = true;
+        }
+    }
+
+    @Nonnull
+    private static GriffonException shuttingDown(@Nonnull String sessionFactoryName) {
+        return new GriffonException("Cannot create sessionFactory '" + sessionFactoryName + "' while the application is shutting down");
+    }
+
+    private static final class SessionHolder {
+        private final Session session;
+        private final boolean readOnly;
+        private boolean rollbackOnly;
+
+        private SessionHolder(@Nonnull Session session, boolean readOnly) {
+            this.session = session;
+            this.readOnly = readOnly;
         }
-        return sessionFactory;
     }
 }
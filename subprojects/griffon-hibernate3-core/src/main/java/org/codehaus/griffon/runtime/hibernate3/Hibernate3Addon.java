@@ -19,9 +19,11 @@ package org.codehaus.griffon.runtime.hibernate3;
 
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.inject.DependsOn;
+import griffon.core.Configuration;
 import griffon.core.GriffonApplication;
 import griffon.core.env.Metadata;
 import griffon.core.events.StartupStartEvent;
+import griffon.exceptions.GriffonException;
 import griffon.plugins.hibernate3.Hibernate3Callback;
 import griffon.plugins.hibernate3.Hibernate3Factory;
 import griffon.plugins.hibernate3.Hibernate3Handler;
@@ -30,13 +32,28 @@ import griffon.plugins.monitor.MBeanManager;
 import org.codehaus.griffon.runtime.core.addon.AbstractGriffonAddon;
 import org.codehaus.griffon.runtime.hibernate3.monitor.Hibernate3StorageMonitor;
 import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.application.event.EventHandler;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static griffon.util.ConfigUtils.getConfigValue;
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
 
 /**
  * @author Andres Almiray
@@ -45,6 +62,22 @@ import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 @DependsOn("datasource")
 @Named("hibernate3")
 public class Hibernate3Addon extends AbstractGriffonAddon {
+    private static final Logger LOG = LoggerFactory.getLogger(Hibernate3Addon.class);
+    private static final String KEY_PARALLEL_STARTUP = "parallelStartup";
+    private static final String KEY_STARTUP_THREADS = "startupThreads";
+    private static final String KEY_SHUTDOWN_THREADS = "shutdownThreads";
+    private static final String KEY_SHUTDOWN_TIMEOUT = "shutdownTimeout";
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT = 30000L;
+    private static final String KEY_WARMUP = "warmup";
+    private static final String KEY_WARMUP_QUERIES = "warmupQueries";
+    private static final String WARMUP_LAZY = "lazy";
+    private static final String WARMUP_STARTUP = "startup";
+    private static final String WARMUP_BACKGROUND = "background";
+
+    @Inject
+    @Named("hibernate3")
+    private Configuration configuration;
+
     @Inject
     private Hibernate3Handler hibernate3Handler;
 
@@ -60,6 +93,8 @@ public class Hibernate3Addon extends AbstractGriffonAddon {
     @Inject
     private Metadata metadata;
 
+    private ExecutorService warmupExecutorService;
+
     @Override
     public void init(@Nonnull GriffonApplication application) {
         mbeanManager.registerMBean(new Hibernate3StorageMonitor(metadata, hibernate3Storage));
@@ -67,23 +102,205 @@ public class Hibernate3Addon extends AbstractGriffonAddon {
 
     @EventHandler
     public void handleStartupStartEvent(@Nonnull StartupStartEvent event) {
+        List<String> sessionFactoryNames = new ArrayList<>();
+        List<String> backgroundSessionFactoryNames = new ArrayList<>();
         for (String sessionFactoryName : hibernate3Factory.getSessionFactoryNames()) {
             Map<String, Object> config = hibernate3Factory.getConfigurationFor(sessionFactoryName);
-            if (getConfigValueAsBoolean(config, "connect_on_startup", false)) {
-                hibernate3Handler.withHbm3Session(sessionFactoryName, new Hibernate3Callback<Void>() {
+            String defaultWarmup = getConfigValueAsBoolean(config, "connect_on_startup", false) ? WARMUP_STARTUP : WARMUP_LAZY;
+            String warmup = getConfigValueAsString(config, KEY_WARMUP, defaultWarmup);
+            if (WARMUP_STARTUP.equals(warmup)) {
+                sessionFactoryNames.add(sessionFactoryName);
+            } else if (WARMUP_BACKGROUND.equals(warmup)) {
+                backgroundSessionFactoryNames.add(sessionFactoryName);
+            } else if (!WARMUP_LAZY.equals(warmup)) {
+                throw new IllegalArgumentException("Invalid value for '" + KEY_WARMUP + "' on sessionFactory '" + sessionFactoryName + "': " + warmup +
+                    ". Must be one of [" + WARMUP_LAZY + ", " + WARMUP_STARTUP + ", " + WARMUP_BACKGROUND + "]");
+            }
+        }
+
+        if (!backgroundSessionFactoryNames.isEmpty()) {
+            connectInBackground(backgroundSessionFactoryNames);
+        }
+
+        if (sessionFactoryNames.size() > 1 && configuration.getAsBoolean(KEY_PARALLEL_STARTUP, false)) {
+            connectInParallel(sessionFactoryNames);
+        } else {
+            for (String sessionFactoryName : sessionFactoryNames) {
+                connect(sessionFactoryName);
+            }
+        }
+    }
+
+    private void connect(@Nonnull String sessionFactoryName) {
+        hibernate3Handler.withHbm3Session(sessionFactoryName, new Hibernate3Callback<Void>() {
+            @Override
+            public Void handle(@Nonnull String sessionFactoryName, @Nonnull Session session) {
+                return null;
+            }
+        });
+
+        final List<String> queries = getConfigValue(hibernate3Factory.getConfigurationFor(sessionFactoryName), KEY_WARMUP_QUERIES, Collections.<String>emptyList());
+        if (!queries.isEmpty()) {
+            hibernate3Handler.withHbm3ReadOnlySession(sessionFactoryName, new Hibernate3Callback<Void>() {
+                @Override
+                public Void handle(@Nonnull String sessionFactoryName, @Nonnull Session session) {
+                    for (String query : queries) {
+                        LOG.debug("Priming sessionFactory '{}' with {}", sessionFactoryName, query);
+                        // compiling the statement and exercising the connection takes a single row
+                        session.createQuery(query).setMaxResults(1).list();
+                        session.clear();
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    private void connectInBackground(@Nonnull List<String> sessionFactoryNames) {
+        // callers arriving before warm-up ends wait on the same in-flight build, see DefaultHibernate3Handler
+        int threads = Math.min(sessionFactoryNames.size(), configuration.getAsInt(KEY_STARTUP_THREADS, Runtime.getRuntime().availableProcessors()));
+        warmupExecutorService = newExecutorService(threads, "hibernate3-warmup-");
+        for (final String sessionFactoryName : sessionFactoryNames) {
+            warmupExecutorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        connect(sessionFactoryName);
+                        LOG.debug("SessionFactory '{}' is warmed up", sessionFactoryName);
+                    } catch (RuntimeException e) {
+                        LOG.error("Could not warm up sessionFactory '" + sessionFactoryName + "'", e);
+                    }
+                }
+            });
+        }
+        warmupExecutorService.shutdown();
+    }
+
+    private void connectInParallel(@Nonnull List<String> sessionFactoryNames) {
+        int threads = Math.min(sessionFactoryNames.size(), configuration.getAsInt(KEY_STARTUP_THREADS, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executorService = newExecutorService(threads, "hibernate3-startup-");
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (final String sessionFactoryName : sessionFactoryNames) {
+                futures.add(executorService.submit(new Runnable() {
                     @Override
-                    public Void handle(@Nonnull String sessionFactoryName, @Nonnull Session session) {
-                        return null;
+                    public void run() {
+                        connect(sessionFactoryName);
+                    }
+                }));
+            }
+
+            RuntimeException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new GriffonException(e.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
                     }
-                });
+                }
             }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GriffonException("Interrupted while connecting to sessionFactories " + sessionFactoryNames, e);
+        } finally {
+            executorService.shutdownNow();
         }
     }
 
+    @Nonnull
+    private static ExecutorService newExecutorService(int threads, @Nonnull final String prefix) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(@Nonnull Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
     @Override
     public void onShutdown(@Nonnull GriffonApplication application) {
+        // nothing may be built behind the back of the SessionFactories listed below
+        if (hibernate3Handler instanceof DefaultHibernate3Handler) {
+            ((DefaultHibernate3Handler) hibernate3Handler).shutdown();
+        }
+        if (warmupExecutorService != null) {
+            warmupExecutorService.shutdownNow();
+            awaitWarmup();
+        }
+
+        List<String> sessionFactoryNames = new ArrayList<>();
         for (String sessionFactoryName : hibernate3Factory.getSessionFactoryNames()) {
-            hibernate3Handler.closeHbm3Session(sessionFactoryName);
+            if (hibernate3Storage.get(sessionFactoryName) != null) {
+                sessionFactoryNames.add(sessionFactoryName);
+            }
+        }
+
+        if (sessionFactoryNames.size() > 1) {
+            disconnectInParallel(sessionFactoryNames);
+        } else {
+            for (String sessionFactoryName : sessionFactoryNames) {
+                disconnect(sessionFactoryName);
+            }
+        }
+    }
+
+    private void awaitWarmup() {
+        // a build cannot be interrupted, the one under way closes its SessionFactory once it is done
+        long timeout = configuration.getAsLong(KEY_SHUTDOWN_TIMEOUT, DEFAULT_SHUTDOWN_TIMEOUT);
+        try {
+            if (!warmupExecutorService.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                LOG.warn("SessionFactories still warming up after {}ms", timeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void disconnect(@Nonnull String sessionFactoryName) {
+        // sessions cut off by the shutdown deadline are reported by the factory
+        hibernate3Handler.closeHbm3Session(sessionFactoryName);
+    }
+
+    private void disconnectInParallel(@Nonnull List<String> sessionFactoryNames) {
+        // each factory waits on its own open sessions, so there is no point in queueing them behind each other
+        int threads = Math.min(sessionFactoryNames.size(), configuration.getAsInt(KEY_SHUTDOWN_THREADS, sessionFactoryNames.size()));
+        ExecutorService executorService = newExecutorService(threads, "hibernate3-shutdown-");
+
+        try {
+            Map<String, Future<?>> futures = new LinkedHashMap<>();
+            for (final String sessionFactoryName : sessionFactoryNames) {
+                futures.put(sessionFactoryName, executorService.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        disconnect(sessionFactoryName);
+                    }
+                }));
+            }
+
+            for (Map.Entry<String, Future<?>> future : futures.entrySet()) {
+                try {
+                    future.getValue().get();
+                } catch (ExecutionException e) {
+                    LOG.error("Could not close sessionFactory '" + future.getKey() + "'", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while closing sessionFactories {}", sessionFactoryNames);
+        } finally {
+            executorService.shutdownNow();
         }
     }
 }
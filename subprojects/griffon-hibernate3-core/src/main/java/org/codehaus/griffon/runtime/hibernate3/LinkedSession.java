@@ -18,21 +18,35 @@
 package org.codehaus.griffon.runtime.hibernate3;
 
 import griffon.annotations.core.Nonnull;
+import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
 import org.hibernate.SessionFactory;
 import org.hibernate.classic.Session;
 
 import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * @author Andres Almiray
  */
 public class LinkedSession extends SessionDecorator {
-    private RecordingSessionFactory sessionFactory;
+    private static final AtomicIntegerFieldUpdater<LinkedSession> CLOSED = AtomicIntegerFieldUpdater.newUpdater(LinkedSession.class, "closed");
+
+    private final RecordingSessionFactory sessionFactory;
+    private final long openedAt;
+    private final Thread openedBy = Thread.currentThread();
+    private volatile int closed;
 
     public LinkedSession(@Nonnull Session delegate, @Nonnull RecordingSessionFactory sessionFactory) {
+        this(delegate, sessionFactory, System.nanoTime());
+    }
+
+    public LinkedSession(@Nonnull Session delegate, @Nonnull RecordingSessionFactory sessionFactory, long openedAt) {
         super(delegate);
         this.sessionFactory = sessionFactory;
+        this.openedAt = openedAt;
     }
 
     @Nonnull
@@ -40,10 +54,55 @@ public class LinkedSession extends SessionDecorator {
         return sessionFactory;
     }
 
+    @Nonnull
+    Thread getOpenedBy() {
+        return openedBy;
+    }
+
+    long getOpenedAt() {
+        return openedAt;
+    }
+
+    @Override
+    public Query createQuery(String queryString) throws HibernateException {
+        return sessionFactory.timed(super.createQuery(queryString), Query.class);
+    }
+
+    @Override
+    public SQLQuery createSQLQuery(String queryString) throws HibernateException {
+        return sessionFactory.timed(super.createSQLQuery(queryString), SQLQuery.class);
+    }
+
+    @Override
+    public Criteria createCriteria(Class persistentClass) {
+        return sessionFactory.timed(super.createCriteria(persistentClass), Criteria.class);
+    }
+
+    @Override
+    public Criteria createCriteria(Class persistentClass, String alias) {
+        return sessionFactory.timed(super.createCriteria(persistentClass, alias), Criteria.class);
+    }
+
+    @Override
+    public Criteria createCriteria(String entityName) {
+        return sessionFactory.timed(super.createCriteria(entityName), Criteria.class);
+    }
+
+    @Override
+    public Criteria createCriteria(String entityName, String alias) {
+        return sessionFactory.timed(super.createCriteria(entityName, alias), Criteria.class);
+    }
+
     @Override
     public Connection close() throws HibernateException {
-        Connection connection = super.close();
-        sessionFactory.decreaseSessionCount();
-        return connection;
+        try {
+            return super.close();
+        } finally {
+            // the session is gone even if closing it failed, its count and permit must not leak
+            // nor be given back twice when the session is closed again
+            if (CLOSED.compareAndSet(this, 0, 1)) {
+                sessionFactory.sessionClosed(this, openedAt);
+            }
+        }
     }
 }
@@ -0,0 +1,107 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3;
+
+import griffon.annotations.core.Nonnull;
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * @author Andres Almiray
+ */
+public class LinkedStatelessSession extends StatelessSessionDecorator {
+    private static final AtomicIntegerFieldUpdater<LinkedStatelessSession> CLOSED = AtomicIntegerFieldUpdater.newUpdater(LinkedStatelessSession.class, "closed");
+
+    private final RecordingSessionFactory sessionFactory;
+    private final long openedAt;
+    private final Thread openedBy = Thread.currentThread();
+    private volatile int closed;
+
+    public LinkedStatelessSession(@Nonnull StatelessSession delegate, @Nonnull RecordingSessionFactory sessionFactory) {
+        this(delegate, sessionFactory, System.nanoTime());
+    }
+
+    public LinkedStatelessSession(@Nonnull StatelessSession delegate, @Nonnull RecordingSessionFactory sessionFactory, long openedAt) {
+        super(delegate);
+        this.sessionFactory = sessionFactory;
+        this.openedAt = openedAt;
+    }
+
+    @Nonnull
+    public SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+    @Nonnull
+    Thread getOpenedBy() {
+        return openedBy;
+    }
+
+    long getOpenedAt() {
+        return openedAt;
+    }
+
+    @Override
+    public Query createQuery(String queryString) throws HibernateException {
+        return sessionFactory.timed(super.createQuery(queryString), Query.class);
+    }
+
+    @Override
+    public SQLQuery createSQLQuery(String queryString) throws HibernateException {
+        return sessionFactory.timed(super.createSQLQuery(queryString), SQLQuery.class);
+    }
+
+    @Override
+    public Criteria createCriteria(Class persistentClass) {
+        return sessionFactory.timed(super.createCriteria(persistentClass), Criteria.class);
+    }
+
+    @Override
+    public Criteria createCriteria(Class persistentClass, String alias) {
+        return sessionFactory.timed(super.createCriteria(persistentClass, alias), Criteria.class);
+    }
+
+    @Override
+    public Criteria createCriteria(String entityName) {
+        return sessionFactory.timed(super.createCriteria(entityName), Criteria.class);
+    }
+
+    @Override
+    public Criteria createCriteria(String entityName, String alias) {
+        return sessionFactory.timed(super.createCriteria(entityName, alias), Criteria.class);
+    }
+
+    @Override
+    public void close() {
+        try {
+            super.close();
+        } finally {
+            // the session is gone even if closing it failed, its count and permit must not leak
+            // nor be given back twice when the session is closed again
+            if (CLOSED.compareAndSet(this, 0, 1)) {
+                sessionFactory.sessionClosed(this, openedAt);
+            }
+        }
+    }
+}
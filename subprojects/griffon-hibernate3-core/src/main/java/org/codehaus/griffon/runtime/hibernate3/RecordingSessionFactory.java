@@ -19,66 +19,449 @@ package org.codehaus.griffon.runtime.hibernate3;
 
 
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.hibernate3.RetryPolicy;
+import org.codehaus.griffon.runtime.hibernate3.internal.ConnectionPoolMetrics;
+import org.codehaus.griffon.runtime.hibernate3.internal.DataSourceConnectionProvider;
 import org.hibernate.HibernateException;
 import org.hibernate.Interceptor;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.classic.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.SessionFactoryImplementor;
 
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
 /**
  * @author Andres Almiray
  */
 public class RecordingSessionFactory extends SessionFactoryDecorator {
-    private AtomicInteger sessionCount = new AtomicInteger(0);
+    private static final String ERROR_OBJECT_NAME_BLANK = "Argument 'objectName' must not be blank";
+
+    private final AtomicInteger sessionCount = new AtomicInteger(0);
+    private final Set<Object> openSessions;
+    private final Set<String> objectNames = new LinkedHashSet<>();
+    private final SessionMetrics metrics = new SessionMetrics();
+    private final AsyncSessionExecutor asyncExecutor;
+    private final SlowOperationDetector slowOperationDetector;
+    private final SessionLimiter sessionLimiter;
+    private final ReplicaRouter replicaRouter;
+    private final RetryPolicy retryPolicy;
+    private final Object drainLock = new Object();
+    private volatile boolean draining;
 
     public RecordingSessionFactory(@Nonnull SessionFactory delegate) {
-        super(delegate);
+        this(builder(delegate));
+    }
+
+    private RecordingSessionFactory(@Nonnull Builder builder) {
+        super(builder.delegate);
+        this.asyncExecutor = builder.asyncExecutor;
+        this.slowOperationDetector = builder.slowOperationDetector;
+        this.sessionLimiter = builder.sessionLimiter;
+        this.replicaRouter = builder.replicaRouter;
+        this.retryPolicy = builder.retryPolicy != null ? builder.retryPolicy : RetryPolicy.NONE;
+        this.openSessions = builder.trackOpenSessions ? ConcurrentHashMap.newKeySet() : null;
+    }
+
+    @Nonnull
+    public static Builder builder(@Nonnull SessionFactory delegate) {
+        return new Builder(delegate);
+    }
+
+    @Nullable
+    public AsyncSessionExecutor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    @Nullable
+    public SlowOperationDetector getSlowOperationDetector() {
+        return slowOperationDetector;
+    }
+
+    @Nullable
+    public SessionLimiter getSessionLimiter() {
+        return sessionLimiter;
+    }
+
+    @Nullable
+    public ReplicaRouter getReplicaRouter() {
+        return replicaRouter;
+    }
+
+    @Nonnull
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    @Nullable
+    public Dialect getDialect() {
+        return getDelegate() instanceof SessionFactoryImplementor ? ((SessionFactoryImplementor) getDelegate()).getDialect() : null;
+    }
+
+    @Nullable
+    public ConnectionPoolMetrics getConnectionPoolMetrics() {
+        return DataSourceConnectionProvider.metricsOf(getDelegate());
     }
 
-    public int increaseSessionCount() {
-        return sessionCount.incrementAndGet();
+    @Nullable
+    public static RecordingSessionFactory unwrap(@Nonnull SessionFactory sessionFactory) {
+        SessionFactory candidate = sessionFactory;
+        while (candidate instanceof SessionFactoryDecorator) {
+            if (candidate instanceof RecordingSessionFactory) {
+                return (RecordingSessionFactory) candidate;
+            }
+            candidate = ((SessionFactoryDecorator) candidate).getDelegate();
+        }
+        return null;
+    }
+
+    public void addObjectName(@Nonnull String objectName) {
+        objectNames.add(requireNonBlank(objectName, ERROR_OBJECT_NAME_BLANK));
+    }
+
+    public void removeObjectName(@Nonnull String objectName) {
+        objectNames.remove(requireNonBlank(objectName, ERROR_OBJECT_NAME_BLANK));
+    }
+
+    @Nonnull
+    public Set<String> getObjectNames() {
+        return Collections.unmodifiableSet(objectNames);
+    }
+
+    public void clearObjectNames() {
+        objectNames.clear();
+    }
+
+    @Nonnull
+    public SessionMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int sessionClosed(@Nonnull Object session, long openedAtNanos) {
+        if (openSessions != null) {
+            openSessions.remove(session);
+        }
+        return sessionClosed(openedAtNanos);
+    }
+
+    private int sessionClosed(long openedAtNanos) {
+        long now = System.nanoTime();
+        long elapsedNanos = now - openedAtNanos;
+        metrics.sessionClosed(now, elapsedNanos);
+        if (slowOperationDetector != null) {
+            slowOperationDetector.sessionClosed(elapsedNanos);
+        }
+        releaseSessionPermit();
+        return decreaseSessionCount();
+    }
+
+    @Nonnull
+    public <T> T timed(@Nonnull T query, @Nonnull Class<T> type) {
+        return slowOperationDetector != null ? slowOperationDetector.timed(query, type) : query;
     }
 
     public int decreaseSessionCount() {
-        return sessionCount.decrementAndGet();
+        int count = sessionCount.decrementAndGet();
+        if (draining && count <= 0) {
+            synchronized (drainLock) {
+                drainLock.notifyAll();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Rejects new sessions from now on. Sessions already open are left untouched.
+     */
+    public void drain() {
+        draining = true;
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Waits until every open session is closed or the timeout elapses.
+     *
+     * @return the number of sessions still open
+     */
+    public int awaitSessions(long timeout, @Nonnull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (drainLock) {
+            while (sessionCount.get() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(drainLock, remaining);
+            }
+        }
+        return sessionCount.get();
     }
 
     public int getSessionCount() {
         return sessionCount.get();
     }
 
+    /**
+     * Sessions opened by this factory that are still open. Always empty unless the factory was built with
+     * {@link Builder#trackOpenSessions(boolean)}.
+     */
+    @Nonnull
+    public Collection<OpenSession> getOpenSessions() {
+        if (openSessions == null) {
+            return Collections.emptyList();
+        }
+        List<OpenSession> sessions = new ArrayList<>();
+        for (Object session : openSessions) {
+            if (session instanceof LinkedSession) {
+                LinkedSession linkedSession = (LinkedSession) session;
+                sessions.add(new OpenSession(linkedSession.getOpenedBy().getName(), linkedSession.getOpenedAt()));
+            } else if (session instanceof LinkedStatelessSession) {
+                LinkedStatelessSession linkedSession = (LinkedStatelessSession) session;
+                sessions.add(new OpenSession(linkedSession.getOpenedBy().getName(), linkedSession.getOpenedAt()));
+            }
+        }
+        return sessions;
+    }
+
     @Override
     public Session openSession() throws HibernateException {
-        org.hibernate.classic.Session session = super.openSession();
-        increaseSessionCount();
-        return wrap(session);
+        int openSessions = reserveSession();
+        try {
+            return wrap(super.openSession(), sessionOpened(openSessions));
+        } catch (RuntimeException e) {
+            cancelSession();
+            throw e;
+        }
     }
 
     @Override
     public Session openSession(Interceptor interceptor) throws HibernateException {
-        org.hibernate.classic.Session session = super.openSession(interceptor);
-        increaseSessionCount();
-        return wrap(session);
+        int openSessions = reserveSession();
+        try {
+            return wrap(super.openSession(interceptor), sessionOpened(openSessions));
+        } catch (RuntimeException e) {
+            cancelSession();
+            throw e;
+        }
     }
 
     @Override
     public Session openSession(Connection connection) {
-        org.hibernate.classic.Session session = super.openSession(connection);
-        increaseSessionCount();
-        return wrap(session);
+        int openSessions = reserveSession();
+        try {
+            return wrap(super.openSession(connection), sessionOpened(openSessions));
+        } catch (RuntimeException e) {
+            cancelSession();
+            throw e;
+        }
     }
 
     @Override
     public Session openSession(Connection connection, Interceptor interceptor) {
-        org.hibernate.classic.Session session = super.openSession(connection, interceptor);
-        increaseSessionCount();
-        return wrap(session);
+        int openSessions = reserveSession();
+        try {
+            return wrap(super.openSession(connection, interceptor), sessionOpened(openSessions));
+        } catch (RuntimeException e) {
+            cancelSession();
+            throw e;
+        }
+    }
+
+    @Override
+    public StatelessSession openStatelessSession() {
+        int openSessions = reserveSession();
+        try {
+            return wrap(super.openStatelessSession(), sessionOpened(openSessions));
+        } catch (RuntimeException e) {
+            cancelSession();
+            throw e;
+        }
+    }
+
+    @Override
+    public StatelessSession openStatelessSession(Connection connection) {
+        int openSessions = reserveSession();
+        try {
+            return wrap(super.openStatelessSession(connection), sessionOpened(openSessions));
+        } catch (RuntimeException e) {
+            cancelSession();
+            throw e;
+        }
+    }
+
+    private int reserveSession() {
+        // counted before checking, a drain either sees this session or this session sees the drain
+        int openSessions = sessionCount.incrementAndGet();
+        if (draining) {
+            decreaseSessionCount();
+            throw new HibernateException("SessionFactory is shutting down, no new sessions are accepted");
+        }
+        try {
+            acquireSessionPermit();
+        } catch (RuntimeException e) {
+            decreaseSessionCount();
+            throw e;
+        }
+        return openSessions;
+    }
+
+    private void cancelSession() {
+        releaseSessionPermit();
+        decreaseSessionCount();
+    }
+
+    private long sessionOpened(int openSessions) {
+        // a single timestamp serves both the open rate and the session's duration
+        long now = System.nanoTime();
+        metrics.sessionOpened(now);
+        if (sessionLimiter != null) {
+            sessionLimiter.opened(openSessions);
+        }
+        return now;
+    }
+
+    private void acquireSessionPermit() {
+        if (sessionLimiter != null) {
+            sessionLimiter.acquire();
+        }
+    }
+
+    private void releaseSessionPermit() {
+        if (sessionLimiter != null) {
+            sessionLimiter.release();
+        }
+    }
+
+    @Nonnull
+    private Session wrap(@Nonnull Session session, long openedAt) {
+        if (session instanceof LinkedSession) {
+            return session;
+        }
+        LinkedSession linkedSession = new LinkedSession(session, this, openedAt);
+        if (openSessions != null) {
+            openSessions.add(linkedSession);
+        }
+        return linkedSession;
     }
 
     @Nonnull
-    private Session wrap(@Nonnull Session session) {
-        return session instanceof LinkedSession ? session : new LinkedSession(session, this);
+    private StatelessSession wrap(@Nonnull StatelessSession session, long openedAt) {
+        if (session instanceof LinkedStatelessSession) {
+            return session;
+        }
+        LinkedStatelessSession linkedSession = new LinkedStatelessSession(session, this, openedAt);
+        if (openSessions != null) {
+            openSessions.add(linkedSession);
+        }
+        return linkedSession;
+    }
+
+    /**
+     * A session that has not been closed yet.
+     */
+    public static final class OpenSession {
+        private final String threadName;
+        private final long openedAtNanos;
+
+        private OpenSession(@Nonnull String threadName, long openedAtNanos) {
+            this.threadName = threadName;
+            this.openedAtNanos = openedAtNanos;
+        }
+
+        /**
+         * Name of the thread that opened the session.
+         */
+        @Nonnull
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public long getOpenMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAtNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "'" + threadName + "' (open for " + getOpenMillis() + "ms)";
+        }
+    }
+
+    /**
+     * Collects the optional collaborators of a {@code RecordingSessionFactory}. Those left unset are disabled.
+     */
+    public static final class Builder {
+        private final SessionFactory delegate;
+        private AsyncSessionExecutor asyncExecutor;
+        private SlowOperationDetector slowOperationDetector;
+        private SessionLimiter sessionLimiter;
+        private ReplicaRouter replicaRouter;
+        private RetryPolicy retryPolicy;
+        private boolean trackOpenSessions;
+
+        private Builder(@Nonnull SessionFactory delegate) {
+            this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        }
+
+        @Nonnull
+        public Builder asyncExecutor(@Nullable AsyncSessionExecutor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
+        @Nonnull
+        public Builder slowOperationDetector(@Nullable SlowOperationDetector slowOperationDetector) {
+            this.slowOperationDetector = slowOperationDetector;
+            return this;
+        }
+
+        @Nonnull
+        public Builder sessionLimiter(@Nullable SessionLimiter sessionLimiter) {
+            this.sessionLimiter = sessionLimiter;
+            return this;
+        }
+
+        @Nonnull
+        public Builder replicaRouter(@Nullable ReplicaRouter replicaRouter) {
+            this.replicaRouter = replicaRouter;
+            return this;
+        }
+
+        @Nonnull
+        public Builder retryPolicy(@Nullable RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Keeps every open session at hand so that those outliving a shutdown can be reported with the thread that
+         * opened them. Costs a registry update per session.
+         */
+        @Nonnull
+        public Builder trackOpenSessions(boolean trackOpenSessions) {
+            this.trackOpenSessions = trackOpenSessions;
+            return this;
+        }
+
+        @Nonnull
+        public RecordingSessionFactory build() {
+            return new RecordingSessionFactory(this);
+        }
     }
 }
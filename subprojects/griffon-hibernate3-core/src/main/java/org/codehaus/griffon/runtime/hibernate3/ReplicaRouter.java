@@ -0,0 +1,228 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.exception.JDBCConnectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Spreads read-only sessions of a SessionFactory over the SessionFactories of its replicas. Replicas that fail with
+ * a connection error are taken out of rotation until a periodic health check finds them reachable again.
+ *
+ * @author Andres Almiray
+ */
+public class ReplicaRouter {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaRouter.class);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    public enum Balancing {
+        ROUND_ROBIN, LEAST_SESSIONS
+    }
+
+    private final String sessionFactoryName;
+    private final Balancing balancing;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledExecutorService healthChecker;
+
+    public ReplicaRouter(@Nonnull String sessionFactoryName, @Nonnull Map<String, RecordingSessionFactory> replicas, @Nonnull Balancing balancing) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        this.balancing = requireNonNull(balancing, "Argument 'balancing' must not be null");
+        requireNonNull(replicas, "Argument 'replicas' must not be null");
+        for (Map.Entry<String, RecordingSessionFactory> replica : replicas.entrySet()) {
+            this.replicas.add(new Replica(replica.getKey(), replica.getValue()));
+        }
+    }
+
+    @Nonnull
+    public Balancing getBalancing() {
+        return balancing;
+    }
+
+    /**
+     * Replica SessionFactories keyed by the name of their DataSource.
+     */
+    @Nonnull
+    public Map<String, RecordingSessionFactory> getReplicas() {
+        Map<String, RecordingSessionFactory> map = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            map.put(replica.name, replica.sessionFactory);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Nonnull
+    public List<String> getHealthyReplicas() {
+        List<String> names = new ArrayList<>();
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                names.add(replica.name);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Picks the replica for the next read-only session, or {@code null} when no replica is healthy.
+     */
+    @Nullable
+    public RecordingSessionFactory select() {
+        List<Replica> healthy = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthy.add(replica);
+            }
+        }
+        if (healthy.isEmpty()) {
+            return null;
+        }
+
+        if (balancing == Balancing.LEAST_SESSIONS) {
+            Replica candidate = healthy.get(0);
+            for (Replica replica : healthy) {
+                if (replica.sessionFactory.getSessionCount() < candidate.sessionFactory.getSessionCount()) {
+                    candidate = replica;
+                }
+            }
+            return candidate.sessionFactory;
+        }
+        return healthy.get(Math.floorMod(next.getAndIncrement(), healthy.size())).sessionFactory;
+    }
+
+    /**
+     * Takes a replica out of rotation if the given failure was caused by its connection.
+     *
+     * @return {@code true} if the replica was taken out of rotation
+     */
+    public boolean failed(@Nonnull RecordingSessionFactory sessionFactory, @Nonnull Throwable failure) {
+        if (!isConnectionFailure(failure)) {
+            return false;
+        }
+        for (Replica replica : replicas) {
+            if (replica.sessionFactory == sessionFactory && replica.healthy) {
+                replica.healthy = false;
+                LOG.warn("Replica '{}' of sessionFactory '{}' is out of rotation", replica.name, sessionFactoryName, failure);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Validates a connection of every replica, bringing reachable replicas back into rotation and taking unreachable
+     * ones out of it.
+     */
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean healthy = isReachable(replica);
+            if (healthy != replica.healthy) {
+                replica.healthy = healthy;
+                if (healthy) {
+                    LOG.info("Replica '{}' of sessionFactory '{}' is back in rotation", replica.name, sessionFactoryName);
+                } else {
+                    LOG.warn("Replica '{}' of sessionFactory '{}' is out of rotation", replica.name, sessionFactoryName);
+                }
+            }
+        }
+    }
+
+    public synchronized void start(long healthCheckIntervalMillis) {
+        if (healthChecker != null || healthCheckIntervalMillis <= 0 || replicas.isEmpty()) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hibernate3-" + sessionFactoryName + "-replicas");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+            healthChecker = null;
+        }
+    }
+
+    private boolean isReachable(@Nonnull Replica replica) {
+        if (!(replica.sessionFactory.getDelegate() instanceof SessionFactoryImplementor)) {
+            return true;
+        }
+        try {
+            SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) replica.sessionFactory.getDelegate();
+            Connection connection = sessionFactory.getConnectionProvider().getConnection();
+            try {
+                return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } finally {
+                sessionFactory.getConnectionProvider().closeConnection(connection);
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOG.debug("Replica '{}' of sessionFactory '{}' is unreachable", replica.name, sessionFactoryName, e);
+            return false;
+        }
+    }
+
+    static boolean isConnectionFailure(@Nullable Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof JDBCConnectionException ||
+                t instanceof SQLTransientConnectionException ||
+                t instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                String sqlState = ((SQLException) t).getSQLState();
+                if (sqlState != null && sqlState.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final RecordingSessionFactory sessionFactory;
+        private volatile boolean healthy = true;
+
+        private Replica(@Nonnull String name, @Nonnull RecordingSessionFactory sessionFactory) {
+            this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+            this.sessionFactory = requireNonNull(sessionFactory, "Argument 'sessionFactory' must not be null");
+        }
+    }
+}
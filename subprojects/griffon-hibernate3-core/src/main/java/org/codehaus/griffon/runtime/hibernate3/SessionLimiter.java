@@ -0,0 +1,111 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3;
+
+import griffon.annotations.core.Nonnull;
+import org.hibernate.HibernateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Keeps the number of open sessions of a SessionFactory in line with the size of its connection pool. Depending on
+ * the policy, sessions opened beyond the limit are either reported (at most once per minute) or made to wait until
+ * another session is closed.
+ *
+ * @author Andres Almiray
+ */
+public class SessionLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionLimiter.class);
+    private static final long WARNING_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    public enum Policy {
+        WARN, BLOCK
+    }
+
+    private final String sessionFactoryName;
+    private final int maxSessions;
+    private final Policy policy;
+    private final long timeoutMillis;
+    private final Semaphore permits;
+    private final LongAdder overflowCount = new LongAdder();
+    private final AtomicLong lastWarning = new AtomicLong(System.nanoTime() - WARNING_INTERVAL);
+
+    public SessionLimiter(@Nonnull String sessionFactoryName, int maxSessions, @Nonnull Policy policy, long timeoutMillis) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        this.maxSessions = maxSessions;
+        this.policy = policy;
+        this.timeoutMillis = timeoutMillis;
+        this.permits = policy == Policy.BLOCK ? new Semaphore(maxSessions, true) : null;
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    @Nonnull
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Number of sessions that were opened beyond the limit or that timed out waiting for it.
+     */
+    public long getOverflowCount() {
+        return overflowCount.sum();
+    }
+
+    void acquire() {
+        if (permits == null) {
+            return;
+        }
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                overflowCount.increment();
+                throw new HibernateException("Timed out after " + timeoutMillis + "ms waiting for one of " + maxSessions + " sessions on sessionFactory '" + sessionFactoryName + "'");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HibernateException("Interrupted while waiting for a session on sessionFactory '" + sessionFactoryName + "'", e);
+        }
+    }
+
+    void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    void opened(int openSessions) {
+        if (policy != Policy.WARN || openSessions <= maxSessions) {
+            return;
+        }
+        overflowCount.increment();
+        long last = lastWarning.get();
+        long now = System.nanoTime();
+        if (now - last >= WARNING_INTERVAL && lastWarning.compareAndSet(last, now)) {
+            LOG.warn("SessionFactory '{}' has {} open sessions but its connection pool holds at most {} connections. Sessions will wait for connections", sessionFactoryName, openSessions, maxSessions);
+        }
+    }
+}
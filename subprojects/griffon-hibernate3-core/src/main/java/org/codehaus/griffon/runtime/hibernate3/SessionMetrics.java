@@ -0,0 +1,194 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Session and transaction counters recorded by {@code RecordingSessionFactory} and {@code DefaultHibernate3Handler}.
+ * Recording is lock-free; rates are one-minute exponentially weighted moving averages.
+ *
+ * @author Andres Almiray
+ */
+public class SessionMetrics {
+    private static final long[] DURATION_BUCKETS_MILLIS = {1, 5, 10, 50, 100, 500, 1000, 5000, 10000};
+
+    private final Meter opened = new Meter();
+    private final Meter closed = new Meter();
+    private final LongAdder committedTransactions = new LongAdder();
+    private final LongAdder rolledBackTransactions = new LongAdder();
+    private final LongAdder failedCallbacks = new LongAdder();
+    private final LongAdder retriedTransactions = new LongAdder();
+    private final LongAdder exhaustedRetries = new LongAdder();
+    private final AtomicLongArray durations = new AtomicLongArray(DURATION_BUCKETS_MILLIS.length + 1);
+    private final LongAdder totalDurationMillis = new LongAdder();
+    private final AtomicLong maxDurationMillis = new AtomicLong();
+
+    public void sessionOpened(long nowNanos) {
+        opened.mark(nowNanos);
+    }
+
+    public void sessionClosed(long nowNanos, long elapsedNanos) {
+        closed.mark(nowNanos);
+        long millis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        durations.incrementAndGet(bucketOf(millis));
+        totalDurationMillis.add(millis);
+        long max = maxDurationMillis.get();
+        while (millis > max && !maxDurationMillis.compareAndSet(max, millis)) {
+            max = maxDurationMillis.get();
+        }
+    }
+
+    public void transactionCommitted() {
+        committedTransactions.increment();
+    }
+
+    public void transactionRolledBack() {
+        rolledBackTransactions.increment();
+    }
+
+    public void callbackFailed() {
+        failedCallbacks.increment();
+    }
+
+    public void transactionRetried() {
+        retriedTransactions.increment();
+    }
+
+    public void retriesExhausted() {
+        exhaustedRetries.increment();
+    }
+
+    public long getOpenedSessionCount() {
+        return opened.getCount();
+    }
+
+    public long getClosedSessionCount() {
+        return closed.getCount();
+    }
+
+    public double getSessionOpenRate() {
+        return opened.getRate();
+    }
+
+    public double getSessionCloseRate() {
+        return closed.getRate();
+    }
+
+    public long getCommittedTransactionCount() {
+        return committedTransactions.sum();
+    }
+
+    public long getRolledBackTransactionCount() {
+        return rolledBackTransactions.sum();
+    }
+
+    public long getFailedCallbackCount() {
+        return failedCallbacks.sum();
+    }
+
+    public long getRetriedTransactionCount() {
+        return retriedTransactions.sum();
+    }
+
+    public long getExhaustedRetryCount() {
+        return exhaustedRetries.sum();
+    }
+
+    public long getMaxSessionDurationMillis() {
+        return maxDurationMillis.get();
+    }
+
+    public double getAverageSessionDurationMillis() {
+        long count = closed.getCount();
+        return count > 0 ? (double) totalDurationMillis.sum() / count : 0d;
+    }
+
+    @Nonnull
+    public Map<String, Long> getSessionDurationHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < DURATION_BUCKETS_MILLIS.length; i++) {
+            histogram.put("<=" + DURATION_BUCKETS_MILLIS[i] + "ms", durations.get(i));
+        }
+        histogram.put(">" + DURATION_BUCKETS_MILLIS[DURATION_BUCKETS_MILLIS.length - 1] + "ms", durations.get(DURATION_BUCKETS_MILLIS.length));
+        return histogram;
+    }
+
+    private static int bucketOf(long millis) {
+        for (int i = 0; i < DURATION_BUCKETS_MILLIS.length; i++) {
+            if (millis <= DURATION_BUCKETS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return DURATION_BUCKETS_MILLIS.length;
+    }
+
+    /**
+     * Counts events and keeps a one-minute moving average of their rate, ticked every 5 seconds.
+     */
+    private static class Meter {
+        private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+        private static final double ALPHA = 1 - Math.exp(-5 / 60.0);
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder uncounted = new LongAdder();
+        private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+        private volatile double rate = -1;
+
+        private void mark(long now) {
+            tickIfNecessary(now);
+            count.increment();
+            uncounted.increment();
+        }
+
+        private long getCount() {
+            return count.sum();
+        }
+
+        private double getRate() {
+            tickIfNecessary(System.nanoTime());
+            return Math.max(rate, 0d) * TimeUnit.SECONDS.toNanos(1) / TICK_INTERVAL;
+        }
+
+        private void tickIfNecessary(long newTick) {
+            long oldTick = lastTick.get();
+            long age = newTick - oldTick;
+            if (age > TICK_INTERVAL) {
+                long newIntervalStartTick = newTick - age % TICK_INTERVAL;
+                if (lastTick.compareAndSet(oldTick, newIntervalStartTick)) {
+                    long ticks = age / TICK_INTERVAL;
+                    for (long i = 0; i < ticks; i++) {
+                        tick();
+                    }
+                }
+            }
+        }
+
+        private synchronized void tick() {
+            double instantRate = uncounted.sumThenReset();
+            rate = rate < 0 ? instantRate : rate + ALPHA * (instantRate - rate);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3;
+
+import griffon.annotations.core.Nonnull;
+import org.hibernate.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reports sessions and query executions that take longer than a threshold. Reports are logged and handed to every
+ * registered {@code Listener}, along with a sample of the caller's stack.
+ *
+ * @author Andres Almiray
+ */
+public class SlowOperationDetector {
+    private static final Logger LOG = LoggerFactory.getLogger(SlowOperationDetector.class);
+    private static final int MAX_STACK_FRAMES = 12;
+    private static final Set<String> EXECUTION_METHODS = new HashSet<>(Arrays.asList("list", "uniqueResult", "iterate", "scroll", "executeUpdate"));
+    private static final String[] IGNORED_FRAMES = {
+        SlowOperationDetector.class.getPackage().getName() + ".",
+        "com.sun.proxy.",
+        "jdk.proxy",
+        "java.lang.reflect.",
+        "sun.reflect.",
+        "jdk.internal.reflect.",
+        "org.codehaus.groovy.runtime.callsite.",
+        "org.codehaus.groovy.reflection."
+    };
+
+    private final String sessionFactoryName;
+    private final long sessionThresholdNanos;
+    private final long queryThresholdNanos;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public SlowOperationDetector(@Nonnull String sessionFactoryName, long sessionThresholdMillis, long queryThresholdMillis) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        this.sessionThresholdNanos = TimeUnit.MILLISECONDS.toNanos(sessionThresholdMillis);
+        this.queryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(queryThresholdMillis);
+    }
+
+    public void addListener(@Nonnull Listener listener) {
+        listeners.add(requireNonNull(listener, "Argument 'listener' must not be null"));
+    }
+
+    public void removeListener(@Nonnull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void sessionClosed(long elapsedNanos) {
+        if (sessionThresholdNanos > 0 && elapsedNanos > sessionThresholdNanos) {
+            report(Kind.SESSION, null, elapsedNanos, sessionThresholdNanos);
+        }
+    }
+
+    /**
+     * Wraps a {@code Query}, {@code SQLQuery} or {@code Criteria} so that its executions are timed.
+     * Returns the argument as is if query timing is disabled.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public <T> T timed(@Nonnull T query, @Nonnull Class<T> type) {
+        if (queryThresholdNanos <= 0) {
+            return query;
+        }
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, new TimingHandler(query));
+    }
+
+    private void report(@Nonnull Kind kind, String statement, long elapsedNanos, long thresholdNanos) {
+        StackTraceElement[] stackSample = sampleStack();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        long threshold = TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+
+        if (LOG.isWarnEnabled()) {
+            StringBuilder b = new StringBuilder();
+            for (StackTraceElement frame : stackSample) {
+                b.append(System.lineSeparator()).append("\tat ").append(frame);
+            }
+            if (kind == Kind.SESSION) {
+                LOG.warn("Session on sessionFactory '{}' was open for {}ms (threshold {}ms){}", sessionFactoryName, elapsed, threshold, b);
+            } else {
+                LOG.warn("Query on sessionFactory '{}' took {}ms (threshold {}ms): {}{}", sessionFactoryName, elapsed, threshold, statement, b);
+            }
+        }
+
+        for (Listener listener : listeners) {
+            listener.slowOperation(kind, sessionFactoryName, statement, elapsed, stackSample);
+        }
+    }
+
+    @Nonnull
+    private static StackTraceElement[] sampleStack() {
+        StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+        StackTraceElement[] sample = new StackTraceElement[Math.min(MAX_STACK_FRAMES, stackTrace.length)];
+        int count = 0;
+        for (StackTraceElement frame : stackTrace) {
+            if (count == sample.length) {
+                break;
+            }
+            if (!isIgnored(frame.getClassName())) {
+                sample[count++] = frame;
+            }
+        }
+        return Arrays.copyOf(sample, count);
+    }
+
+    private static boolean isIgnored(@Nonnull String className) {
+        for (String prefix : IGNORED_FRAMES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public enum Kind {
+        SESSION, QUERY
+    }
+
+    public interface Listener {
+        void slowOperation(@Nonnull Kind kind, @Nonnull String sessionFactoryName, String statement, long elapsedMillis, @Nonnull StackTraceElement[] stackSample);
+    }
+
+    private class TimingHandler implements InvocationHandler {
+        private final Object target;
+
+        private TimingHandler(@Nonnull Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            boolean execution = EXECUTION_METHODS.contains(method.getName());
+            long start = execution ? System.nanoTime() : 0L;
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (execution) {
+                    long elapsed = System.nanoTime() - start;
+                    if (elapsed > queryThresholdNanos) {
+                        report(Kind.QUERY, statement(), elapsed, queryThresholdNanos);
+                    }
+                }
+            }
+            // keep chained setters on the timed instance
+            return result == target ? proxy : result;
+        }
+
+        @Nonnull
+        private String statement() {
+            return target instanceof Query ? ((Query) target).getQueryString() : String.valueOf(target);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.cache;
+
+import griffon.annotations.core.Nonnull;
+import org.hibernate.cache.Cache;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.Timestamper;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory cache region with least-recently-used eviction and per-entry time to live.
+ *
+ * @author Andres Almiray
+ */
+public class LocalCache implements Cache {
+    private static final int LOCK_TIMEOUT = Timestamper.ONE_MS * 60000;
+
+    private final String regionName;
+    private final long ttlMillis;
+    private final Map<Object, CacheEntry> entries;
+
+    public LocalCache(@Nonnull String regionName, long ttlMillis, final int maxEntries) {
+        this.regionName = regionName;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<Object, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry> eldest) {
+                return maxEntries > 0 && size() > maxEntries;
+            }
+        };
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    @Override
+    public Object read(Object key) throws CacheException {
+        return get(key);
+    }
+
+    @Override
+    public synchronized Object get(Object key) throws CacheException {
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public synchronized void put(Object key, Object value) throws CacheException {
+        entries.put(key, new CacheEntry(value, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE));
+    }
+
+    @Override
+    public void update(Object key, Object value) throws CacheException {
+        put(key, value);
+    }
+
+    @Override
+    public synchronized void remove(Object key) throws CacheException {
+        entries.remove(key);
+    }
+
+    @Override
+    public synchronized void clear() throws CacheException {
+        entries.clear();
+    }
+
+    @Override
+    public void destroy() throws CacheException {
+        clear();
+    }
+
+    @Override
+    public void lock(Object key) throws CacheException {
+        // local cache, nothing to do
+    }
+
+    @Override
+    public void unlock(Object key) throws CacheException {
+        // local cache, nothing to do
+    }
+
+    @Override
+    public long nextTimestamp() {
+        return Timestamper.next();
+    }
+
+    @Override
+    public int getTimeout() {
+        return LOCK_TIMEOUT;
+    }
+
+    @Override
+    public String getRegionName() {
+        return regionName;
+    }
+
+    @Override
+    public long getSizeInMemory() {
+        return -1;
+    }
+
+    @Override
+    public synchronized long getElementCountInMemory() {
+        return entries.size();
+    }
+
+    @Override
+    public long getElementCountOnDisk() {
+        return 0;
+    }
+
+    @Override
+    public synchronized Map toMap() {
+        long now = System.currentTimeMillis();
+        Map<Object, Object> map = new HashMap<>();
+        for (Iterator<Map.Entry<Object, CacheEntry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Object, CacheEntry> e = it.next();
+            if (e.getValue().isExpired(now)) {
+                it.remove();
+            } else {
+                map.put(e.getKey(), e.getValue().value);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalCache(" + regionName + ')';
+    }
+
+    private static class CacheEntry {
+        private final Object value;
+        private final long expiresAt;
+
+        private CacheEntry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.cache;
+
+import org.hibernate.cache.Cache;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.CacheProvider;
+import org.hibernate.cache.Timestamper;
+import org.hibernate.cache.UpdateTimestampsCache;
+import org.hibernate.util.PropertiesHelper;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Second-level cache provider backed by {@code LocalCache} regions. Time to live (in seconds) and maximum number of
+ * entries may be set for all regions and for individual regions with the {@code griffon.plugins.hibernate3.cache.*}
+ * properties. The update timestamps region never expires nor evicts entries, as required by the query cache.
+ *
+ * @author Andres Almiray
+ */
+public class LocalCacheProvider implements CacheProvider {
+    public static final String TTL = "griffon.plugins.hibernate3.cache.ttl";
+    public static final String MAX_ENTRIES = "griffon.plugins.hibernate3.cache.max_entries";
+    public static final String REGION_PREFIX = "griffon.plugins.hibernate3.cache.region.";
+    public static final String REGION_TTL_SUFFIX = ".ttl";
+    public static final String REGION_MAX_ENTRIES_SUFFIX = ".max_entries";
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    @Override
+    public Cache buildCache(String regionName, Properties properties) throws CacheException {
+        if (regionName.endsWith(UpdateTimestampsCache.REGION_NAME)) {
+            return new LocalCache(regionName, 0, 0);
+        }
+
+        int ttl = PropertiesHelper.getInt(TTL, properties, 0);
+        int maxEntries = PropertiesHelper.getInt(MAX_ENTRIES, properties, DEFAULT_MAX_ENTRIES);
+        ttl = PropertiesHelper.getInt(REGION_PREFIX + regionName + REGION_TTL_SUFFIX, properties, ttl);
+        maxEntries = PropertiesHelper.getInt(REGION_PREFIX + regionName + REGION_MAX_ENTRIES_SUFFIX, properties, maxEntries);
+        return new LocalCache(regionName, TimeUnit.SECONDS.toMillis(ttl), maxEntries);
+    }
+
+    @Override
+    public long nextTimestamp() {
+        return Timestamper.next();
+    }
+
+    @Override
+    public void start(Properties properties) throws CacheException {
+        // nothing to do
+    }
+
+    @Override
+    public void stop() {
+        // nothing to do
+    }
+
+    @Override
+    public boolean isMinimalPutsEnabledByDefault() {
+        return false;
+    }
+}
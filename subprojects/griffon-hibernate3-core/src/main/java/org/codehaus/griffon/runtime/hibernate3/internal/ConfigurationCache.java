@@ -0,0 +1,243 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.hibernate.cfg.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * <p>Stores a serialized {@code Configuration} whose mappings have already been built, so that
+ * {@code hbm.xml} resources need not be parsed again as long as they (and the settings used to bind them)
+ * remain unchanged.</p>
+ * <p>Cache files are named after the sessionFactory and a digest of every input; stale files are
+ * removed whenever a new entry is stored.</p>
+ * <p>Only files owned by the current user, in a directory no other user may write to, are read back. Deserialization
+ * is further restricted to Hibernate and JDK types plus the classes registered with {@link #allow(String)}.</p>
+ *
+ * @author Andres Almiray
+ */
+public class ConfigurationCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigurationCache.class);
+    private static final String SUFFIX = ".ser";
+    private static final String[] ALLOWED_PACKAGES = {
+        "java.",
+        "org.hibernate.",
+        "org.dom4j.",
+        "org.slf4j.",
+        "org.codehaus.griffon.runtime.hibernate3."
+    };
+
+    private final File directory;
+    private final String sessionFactoryName;
+    private final ClassLoader classLoader;
+    private final MessageDigest digest;
+    private final Set<String> allowedClasses = new LinkedHashSet<>();
+
+    public ConfigurationCache(@Nonnull File directory, @Nonnull String sessionFactoryName, @Nonnull ClassLoader classLoader) {
+        this.directory = requireNonNull(directory, "Argument 'directory' must not be null");
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        this.classLoader = requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Allows instances of the given class, such as a mapped entity or an interceptor, to be read back from the cache.
+     * Names ending with {@code .} allow every class in that package and its subpackages.
+     */
+    public void allow(@Nonnull String className) {
+        allowedClasses.add(requireNonBlank(className, "Argument 'className' must not be blank"));
+    }
+
+    public void update(@Nonnull String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    public void updateWithResource(@Nonnull String resource) {
+        update(resource);
+        InputStream in = classLoader.getResourceAsStream(resource);
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + resource, e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    @Nullable
+    public Configuration load(@Nonnull String key) {
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        if (!PrivateFiles.isPrivate(directory) || !PrivateFiles.isPrivate(file)) {
+            return null;
+        }
+
+        try (ObjectInputStream in = new FilteringObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Configuration configuration = (Configuration) in.readObject();
+            LOG.debug("Loaded cached configuration for sessionFactory '{}' from {}", sessionFactoryName, file);
+            return configuration;
+        } catch (Exception e) {
+            LOG.warn("Discarding unreadable configuration cache " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    public void store(@Nonnull String key, @Nonnull Configuration configuration) {
+        if (!PrivateFiles.ensureDirectory(directory)) {
+            LOG.warn("Not caching configuration for sessionFactory '{}', directory {} is not private", sessionFactoryName, directory);
+            return;
+        }
+
+        File file = fileFor(key);
+        File tmp = new File(directory, file.getName() + ".tmp");
+        try {
+            PrivateFiles.createFile(tmp);
+        } catch (IOException e) {
+            LOG.warn("Cannot cache configuration for sessionFactory '" + sessionFactoryName + "'", e);
+            return;
+        }
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeObject(configuration);
+        } catch (IOException e) {
+            LOG.warn("Cannot cache configuration for sessionFactory '" + sessionFactoryName + "'", e);
+            tmp.delete();
+            return;
+        }
+
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.debug("Cached configuration for sessionFactory '{}' at {}", sessionFactoryName, file);
+        } catch (IOException e) {
+            LOG.warn("Cannot cache configuration for sessionFactory '" + sessionFactoryName + "'", e);
+            tmp.delete();
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            String prefix = sessionFactoryName + "-";
+            for (File f : files) {
+                if (f.getName().startsWith(prefix) && f.getName().endsWith(SUFFIX) && !f.equals(file)) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    public String computeKey() {
+        StringBuilder b = new StringBuilder();
+        for (byte v : digest.digest()) {
+            b.append(String.format("%02x", v));
+        }
+        return b.toString();
+    }
+
+    @Nonnull
+    private File fileFor(@Nonnull String key) {
+        return new File(directory, sessionFactoryName + "-" + key + SUFFIX);
+    }
+
+    private static void closeQuietly(@Nonnull InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // ignore
+        }
+    }
+
+    private boolean isAllowed(@Nonnull String className) {
+        String name = className;
+        if (name.startsWith("[")) {
+            // arrays are named [I or [Lcom.acme.Type;
+            name = name.substring(name.lastIndexOf('[') + 1);
+            if (name.length() == 1) {
+                return true;
+            }
+            name = name.substring(1, name.length() - 1);
+        }
+        for (String allowedPackage : ALLOWED_PACKAGES) {
+            if (name.startsWith(allowedPackage)) {
+                return true;
+            }
+        }
+        for (String allowed : allowedClasses) {
+            if (allowed.endsWith(".") ? name.startsWith(allowed) : name.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private class FilteringObjectInputStream extends ObjectInputStream {
+        private FilteringObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "not allowed in the configuration cache of sessionFactory '" + sessionFactoryName + "'");
+            }
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection borrow statistics recorded by {@code DataSourceConnectionProvider}. Pool sizes are read from the
+ * DataSource when it exposes them the way HikariCP does; they are reported as {@code -1} otherwise.
+ *
+ * @author Andres Almiray
+ */
+public class ConnectionPoolMetrics {
+    private static final int UNRESOLVED = -2;
+
+    private final DataSource dataSource;
+    private final AtomicInteger borrowedConnections = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder borrowFailureCount = new LongAdder();
+    private final LongAdder totalBorrowWaitNanos = new LongAdder();
+    private final AtomicLong maxBorrowWaitNanos = new AtomicLong();
+    private volatile int maximumPoolSize = UNRESOLVED;
+
+    public ConnectionPoolMetrics(@Nonnull DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    void connectionBorrowed(long waitNanos) {
+        borrowedConnections.incrementAndGet();
+        borrowCount.increment();
+        recordWait(waitNanos);
+    }
+
+    void borrowFailed(long waitNanos) {
+        borrowFailureCount.increment();
+        recordWait(waitNanos);
+    }
+
+    void connectionReturned() {
+        borrowedConnections.decrementAndGet();
+    }
+
+    private void recordWait(long waitNanos) {
+        totalBorrowWaitNanos.add(waitNanos);
+        long max = maxBorrowWaitNanos.get();
+        while (waitNanos > max && !maxBorrowWaitNanos.compareAndSet(max, waitNanos)) {
+            max = maxBorrowWaitNanos.get();
+        }
+    }
+
+    /**
+     * Connections handed to Hibernate and not yet returned.
+     */
+    public int getBorrowedConnections() {
+        return borrowedConnections.get();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    public long getBorrowFailureCount() {
+        return borrowFailureCount.sum();
+    }
+
+    public double getAverageBorrowWaitMillis() {
+        long count = borrowCount.sum() + borrowFailureCount.sum();
+        return count > 0 ? totalBorrowWaitNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1) : 0d;
+    }
+
+    public double getMaxBorrowWaitMillis() {
+        return maxBorrowWaitNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public int getMaximumPoolSize() {
+        if (maximumPoolSize == UNRESOLVED) {
+            maximumPoolSize = asInt(invoke(dataSource, "getMaximumPoolSize"));
+        }
+        return maximumPoolSize;
+    }
+
+    public int getActiveConnections() {
+        return asInt(invoke(pool(), "getActiveConnections"));
+    }
+
+    public int getIdleConnections() {
+        return asInt(invoke(pool(), "getIdleConnections"));
+    }
+
+    public int getTotalConnections() {
+        return asInt(invoke(pool(), "getTotalConnections"));
+    }
+
+    public int getThreadsAwaitingConnection() {
+        return asInt(invoke(pool(), "getThreadsAwaitingConnection"));
+    }
+
+    @Nullable
+    private Object pool() {
+        return invoke(dataSource, "getHikariPoolMXBean");
+    }
+
+    @Nullable
+    private static Object invoke(@Nullable Object target, @Nonnull String methodName) {
+        if (target == null) {
+            return null;
+        }
+        try {
+            Method method = target.getClass().getMethod(methodName);
+            return method.invoke(target);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static int asInt(@Nullable Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : -1;
+    }
+}
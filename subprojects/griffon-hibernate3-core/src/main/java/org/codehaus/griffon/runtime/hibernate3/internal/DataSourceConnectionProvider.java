@@ -17,8 +17,13 @@
  */
 package org.codehaus.griffon.runtime.hibernate3.internal;
 
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
 import org.hibernate.connection.ConnectionProvider;
+import org.hibernate.engine.SessionFactoryImplementor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +31,12 @@ import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
 
 /**
  * <p>Hibernate connection provider for local DataSource instances.</p>
@@ -35,24 +46,72 @@ import java.util.Properties;
  * @author Andres Almiray
  */
 public class DataSourceConnectionProvider implements ConnectionProvider {
+    /**
+     * Hibernate property holding the key under which the DataSource was bound with {@code bind()}.
+     */
+    public static final String DATASOURCE_NAME = "griffon.plugins.hibernate3.datasource";
+
     private static final Logger LOG = LoggerFactory.getLogger(DataSourceConnectionProvider.class);
+    private static final String ERROR_DATASOURCE_NAME_BLANK = "Argument 'dataSourceName' must not be blank";
+    private static final ConcurrentMap<String, DataSource> DATASOURCES = new ConcurrentHashMap<>();
+
     private DataSource dataSource;
+    private ConnectionPoolMetrics metrics;
 
-    public DataSource getDataSource() {
-        if (null == this.dataSource) {
-            this.dataSource = HibernateConfigurationHelper.getDataSource();
+    /**
+     * Makes a DataSource available to the provider of a SessionFactory whose {@link #DATASOURCE_NAME} property holds
+     * the returned key. Every call returns a new key, builds sharing a DataSource name never see each other's binding.
+     * The binding is only needed while the SessionFactory is built and should be released with {@code unbind()}.
+     */
+    @Nonnull
+    public static String bind(@Nonnull String dataSourceName, @Nonnull DataSource dataSource) {
+        requireNonBlank(dataSourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(dataSource, "Argument 'dataSource' must not be null");
+        String key = dataSourceName + "#" + UUID.randomUUID();
+        DATASOURCES.put(key, dataSource);
+        return key;
+    }
+
+    public static void unbind(@Nonnull String key) {
+        DATASOURCES.remove(requireNonBlank(key, "Argument 'key' must not be blank"));
+    }
+
+    /**
+     * Releases the DataSource bound for the given Configuration, if any.
+     */
+    public static void unbind(@Nonnull Configuration configuration) {
+        String key = requireNonNull(configuration, "Argument 'configuration' must not be null").getProperty(DATASOURCE_NAME);
+        if (key != null) {
+            unbind(key);
         }
+    }
+
+    public DataSource getDataSource() {
         return this.dataSource;
     }
 
+    public ConnectionPoolMetrics getMetrics() {
+        return metrics;
+    }
+
     public void configure(Properties properties) throws HibernateException {
-        this.dataSource = HibernateConfigurationHelper.getDataSource();
+        String key = properties.getProperty(DATASOURCE_NAME);
+        DataSource ds = key != null ? DATASOURCES.get(key) : null;
+        if (ds == null) {
+            throw new HibernateException("No DataSource is bound for '" + key + "'. Property " + DATASOURCE_NAME + " is missing or the SessionFactory was built after DataSourceConnectionProvider.unbind()");
+        }
+        this.dataSource = ds;
+        this.metrics = new ConnectionPoolMetrics(ds);
     }
 
     public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
         try {
-            return getDataSource().getConnection();
+            Connection connection = dataSource.getConnection();
+            metrics.connectionBorrowed(System.nanoTime() - start);
+            return connection;
         } catch (SQLException ex) {
+            metrics.borrowFailed(System.nanoTime() - start);
             logExceptions(ex);
             throw ex;
         }
@@ -64,10 +123,27 @@ public class DataSourceConnectionProvider implements ConnectionProvider {
         } catch (SQLException ex) {
             logExceptions(ex);
             throw ex;
+        } finally {
+            metrics.connectionReturned();
         }
     }
 
     public void close() throws HibernateException {
+        // the pool belongs to the datasource plugin, see DefaultHibernate3Factory.closeDataSource()
+    }
+
+    /**
+     * Returns the connection metrics of a SessionFactory whose connections are provided by this class, if any.
+     */
+    @Nullable
+    public static ConnectionPoolMetrics metricsOf(@Nonnull SessionFactory sessionFactory) {
+        if (sessionFactory instanceof SessionFactoryImplementor) {
+            ConnectionProvider connectionProvider = ((SessionFactoryImplementor) sessionFactory).getConnectionProvider();
+            if (connectionProvider instanceof DataSourceConnectionProvider) {
+                return ((DataSourceConnectionProvider) connectionProvider).getMetrics();
+            }
+        }
+        return null;
     }
 
     public boolean supportsAggressiveRelease() {
@@ -17,44 +17,104 @@
  */
 package org.codehaus.griffon.runtime.hibernate3.internal;
 
+import griffon.annotations.core.Nullable;
 import griffon.core.GriffonApplication;
 import griffon.util.GriffonNameUtils;
 import org.codehaus.griffon.runtime.hibernate3.internal.exceptions.DatabaseException;
 import org.hibernate.dialect.Dialect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.hibernate.dialect.resolver.DialectFactory.buildDialect;
 
 /**
+ * Resolves the Hibernate dialect of a DataSource. Given the key of the DataSource (its configured JDBC URL and driver),
+ * resolved dialects are remembered for the lifetime of the application and, if a cache file is given, across launches.
+ * Remembered dialects are looked up by that key along with the product name and version of the database and the version
+ * of the driver, as read from a single connection, so upgrading either resolves the dialect again.
+ *
  * @author Andres Almiray
  */
 public class DialectDetector {
+    private static final Logger LOG = LoggerFactory.getLogger(DialectDetector.class);
+    private static final ConcurrentMap<String, String> DIALECTS = new ConcurrentHashMap<>();
+    private static final Object CACHE_FILE_LOCK = new Object();
+
     private final DataSource dataSource;
     private final GriffonApplication application;
+    private final String dataSourceKey;
+    private final File cacheFile;
 
     public DialectDetector(GriffonApplication application, DataSource dataSource) {
+        this(application, dataSource, null, null);
+    }
+
+    public DialectDetector(GriffonApplication application, DataSource dataSource, @Nullable String dataSourceKey, @Nullable File cacheFile) {
         this.application = application;
         this.dataSource = dataSource;
+        this.dataSourceKey = dataSourceKey;
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Key of a DataSource as configured, {@code null} when it has no JDBC URL (a JNDI DataSource for instance).
+     */
+    @Nullable
+    public static String dataSourceKey(@Nullable String url, @Nullable String driverClassName) {
+        if (GriffonNameUtils.isBlank(url)) {
+            return null;
+        }
+        return url + "|" + (driverClassName != null ? driverClassName : "");
     }
 
     public String getDialect() {
         Connection connection = null;
 
         try {
-            String dbName = (String) JdbcUtils.extractDatabaseMetaData(dataSource, "getDatabaseProductName");
+            // one connection serves both the cache lookup and, on a miss, the detection
             connection = dataSource.getConnection();
+            if (dataSourceKey == null) {
+                return detectDialect(connection);
+            }
 
-            Dialect hibernateDialect = buildDialect(application.getConfiguration().asProperties(), connection);
-            String hibernateDialectClassName = hibernateDialect.getClass().getName();
-
-            if (GriffonNameUtils.isBlank(hibernateDialectClassName)) {
-                throw new DatabaseException(
-                    "Could not determine Hibernate dialect for database name [" + dbName + "]!");
+            DatabaseMetaData metaData = connection.getMetaData();
+            String key = dataSourceKey + "|" + metaData.getDatabaseProductName() + "|" + metaData.getDatabaseProductVersion() + "|" + metaData.getDriverVersion();
+            String hibernateDialectClassName = DIALECTS.get(key);
+            if (hibernateDialectClassName == null && cacheFile != null) {
+                hibernateDialectClassName = readCacheFile().getProperty(digest(key));
+                if (hibernateDialectClassName != null) {
+                    DIALECTS.putIfAbsent(key, hibernateDialectClassName);
+                }
+            }
+            if (hibernateDialectClassName != null) {
+                LOG.debug("Using cached dialect {}", hibernateDialectClassName);
+                return hibernateDialectClassName;
             }
 
+            hibernateDialectClassName = detectDialect(connection);
+            DIALECTS.put(key, hibernateDialectClassName);
+            if (cacheFile != null) {
+                writeCacheFile(key, hibernateDialectClassName);
+            }
             return hibernateDialectClassName;
         } catch (SQLException e) {
             throw new DatabaseException(e);
@@ -62,4 +122,71 @@ public class DialectDetector {
             JdbcUtils.closeConnection(connection);
         }
     }
+
+    private String detectDialect(Connection connection) throws SQLException {
+        String dbName = connection.getMetaData().getDatabaseProductName();
+
+        Dialect hibernateDialect = buildDialect(application.getConfiguration().asProperties(), connection);
+        String hibernateDialectClassName = hibernateDialect.getClass().getName();
+
+        if (GriffonNameUtils.isBlank(hibernateDialectClassName)) {
+            throw new DatabaseException(
+                "Could not determine Hibernate dialect for database name [" + dbName + "]!");
+        }
+
+        return hibernateDialectClassName;
+    }
+
+    // JDBC URLs may carry credentials, keep them out of the cache file
+    private static String digest(String key) {
+        try {
+            StringBuilder b = new StringBuilder();
+            for (byte v : MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8))) {
+                b.append(String.format("%02x", v));
+            }
+            return b.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Properties readCacheFile() {
+        Properties properties = new Properties();
+        synchronized (CACHE_FILE_LOCK) {
+            File directory = cacheFile.getAbsoluteFile().getParentFile();
+            if (cacheFile.isFile() && PrivateFiles.isPrivate(directory) && PrivateFiles.isPrivate(cacheFile)) {
+                try (InputStream in = new FileInputStream(cacheFile)) {
+                    properties.load(in);
+                } catch (IOException e) {
+                    LOG.warn("Cannot read dialect cache " + cacheFile, e);
+                }
+            }
+        }
+        return properties;
+    }
+
+    private void writeCacheFile(String key, String dialect) {
+        synchronized (CACHE_FILE_LOCK) {
+            Properties properties = readCacheFile();
+            properties.setProperty(digest(key), dialect);
+
+            File directory = cacheFile.getAbsoluteFile().getParentFile();
+            if (!PrivateFiles.ensureDirectory(directory)) {
+                LOG.warn("Not caching dialects, directory {} is not private", directory);
+                return;
+            }
+
+            File tmp = new File(directory, cacheFile.getName() + ".tmp");
+            try {
+                PrivateFiles.createFile(tmp);
+                try (OutputStream out = new FileOutputStream(tmp)) {
+                    properties.store(out, "Hibernate dialects");
+                }
+                Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOG.warn("Cannot write dialect cache " + cacheFile, e);
+                tmp.delete();
+            }
+        }
+    }
 }
@@ -19,22 +19,33 @@ package org.codehaus.griffon.runtime.hibernate3.internal;
 
 import griffon.core.GriffonApplication;
 import griffon.plugins.hibernate3.Hibernate3Mapping;
+import griffon.plugins.hibernate3.SessionFactories;
+import org.codehaus.griffon.runtime.hibernate3.cache.LocalCacheProvider;
 import org.hibernate.HibernateException;
 import org.hibernate.Interceptor;
+import org.hibernate.Version;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.cfg.Environment;
 import org.hibernate.cfg.NamingStrategy;
+import org.hibernate.dialect.Dialect;
 import org.kordamp.jipsy.util.TypeLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 import static griffon.util.ConfigUtils.getConfigValue;
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
 import static griffon.util.GriffonNameUtils.isBlank;
 
 /**
@@ -48,22 +59,52 @@ public class HibernateConfigurationHelper {
     public static final String ENTITY_INTERCEPTOR = "entityInterceptor";
     public static final String NAMING_STRATEGY = "namingStrategy";
     public static final String PROPS = "props";
+    public static final String BATCH_SIZE = "batchSize";
+    public static final String FETCH_SIZE = "fetchSize";
+    public static final String STATISTICS = "statistics";
+    public static final String ORDER_INSERTS = "orderInserts";
+    public static final String ORDER_UPDATES = "orderUpdates";
+    public static final String BATCH_VERSIONED_DATA = "batchVersionedData";
+    public static final String CONFIGURATION_CACHE = "configurationCache";
+    public static final String CONFIGURATION_CACHE_DIR = "configurationCacheDir";
+    public static final String DIALECT_CACHE = "dialectCache";
+    public static final String SECOND_LEVEL_CACHE = "secondLevelCache";
+    public static final String QUERY_CACHE = "queryCache";
+    public static final String CACHE_TTL = "cacheTtl";
+    public static final String CACHE_MAX_ENTRIES = "cacheMaxEntries";
+    public static final String CACHE_REGIONS = "cacheRegions";
+    public static final String CACHED_ENTITIES = "cachedEntities";
+    public static final String CACHED_COLLECTIONS = "cachedCollections";
+    public static final String MAPPINGS = "mappings";
+    public static final String INCLUDE_MAPPINGS = "includeMappings";
+    public static final String EXCLUDE_MAPPINGS = "excludeMappings";
     private static final Logger LOG = LoggerFactory.getLogger(HibernateConfigurationHelper.class);
     private static final String HBM_XML_SUFFIX = ".hbm.xml";
 
-    private static final ThreadLocal<DataSource> dataSourceHolder = new ThreadLocal<>();
     private final Map<String, Object> sessionConfig;
+    private final String sessionFactoryName;
     private final String dataSourceName;
     private final DataSource dataSource;
     private final GriffonApplication application;
+    private Map<String, Object> dataSourceConfig = Collections.emptyMap();
+    private boolean configurationCached;
 
     public HibernateConfigurationHelper(GriffonApplication application, Map<String, Object> sessionConfig, String dataSourceName, DataSource dataSource) {
+        this(application, sessionConfig, dataSourceName, dataSourceName, dataSource);
+    }
+
+    public HibernateConfigurationHelper(GriffonApplication application, Map<String, Object> sessionConfig, String sessionFactoryName, String dataSourceName, DataSource dataSource) {
         this.application = application;
         this.sessionConfig = sessionConfig;
+        this.sessionFactoryName = sessionFactoryName;
         this.dataSourceName = dataSourceName;
         this.dataSource = dataSource;
     }
 
+    public String getSessionFactoryName() {
+        return sessionFactoryName;
+    }
+
     public String getDataSourceName() {
         return dataSourceName;
     }
@@ -72,21 +113,67 @@ public class HibernateConfigurationHelper {
         return sessionConfig;
     }
 
+    /**
+     * Settings of the DataSource. Its {@code url} and {@code driverClassName} let a cached dialect be found without
+     * opening a connection.
+     */
+    public void setDataSourceConfig(Map<String, Object> dataSourceConfig) {
+        this.dataSourceConfig = dataSourceConfig != null ? dataSourceConfig : Collections.<String, Object>emptyMap();
+    }
+
+    /**
+     * Whether the last call to {@link #buildConfiguration()} was served from the configuration cache.
+     */
+    public boolean isConfigurationCached() {
+        return configurationCached;
+    }
+
+    /**
+     * Builds the Configuration and binds the DataSource to its connection provider. Release the binding with
+     * {@code DataSourceConnectionProvider.unbind(configuration)} once the SessionFactory has been built.
+     */
     public Configuration buildConfiguration() {
-        // Create Configuration instance.
-        Configuration config = newConfiguration();
+        String dialect = resolveDialect();
+        List<String> resources = resolveMappingResources();
 
-        dataSourceHolder.set(dataSource);
+        ConfigurationCache cache = null;
+        String cacheKey = null;
+        Configuration config = null;
+        if (getConfigValueAsBoolean(sessionConfig, CONFIGURATION_CACHE, false)) {
+            cache = new ConfigurationCache(resolveCacheDirectory(), dataSourceName, application.getApplicationClassLoader().get());
+            cacheKey = computeCacheKey(cache, dialect, resources);
+            allowApplicationClasses(cache, resources);
+            config = cache.load(cacheKey);
+        }
+
+        boolean cached = config != null;
+        configurationCached = cached;
+        if (!cached) {
+            // Create Configuration instance.
+            config = newConfiguration();
+        }
 
         applyEntityInterceptor(config);
         applyNamingStrategy(config);
         applyProperties(config);
-        applyDialect(config);
-        applyMappings(config);
+        config.setProperty(Environment.DIALECT, dialect);
+        applyBatching(config);
+        applyCaching(config);
+
+        if (!cached) {
+            applyMappings(config, resources);
+            applyCacheConcurrencyStrategies(config);
+            if (cache != null) {
+                // bind mappings now so that the cached copy holds metadata rather than unparsed documents
+                config.buildMappings();
+                cache.store(cacheKey, config);
+            }
+        }
 
         Class providerClass = DataSourceConnectionProvider.class;
         // Set Spring-provided DataSource as Hibernate ConnectionProvider.
         config.setProperty(Environment.CONNECTION_PROVIDER, providerClass.getName());
+        config.setProperty(DataSourceConnectionProvider.DATASOURCE_NAME, DataSourceConnectionProvider.bind(dataSourceName, dataSource));
 
         return config;
     }
@@ -125,40 +212,217 @@ public class HibernateConfigurationHelper {
         if (getConfigValueAsBoolean(sessionConfig, "formatSql", false)) {
             config.setProperty("hibernate.format_sql", "true");
         }
+        if (getConfigValueAsBoolean(sessionConfig, STATISTICS, false)) {
+            config.setProperty(Environment.GENERATE_STATISTICS, "true");
+        }
+    }
+
+    private void applyCaching(Configuration config) {
+        boolean secondLevelCache = getConfigValueAsBoolean(sessionConfig, SECOND_LEVEL_CACHE, false);
+        boolean queryCache = getConfigValueAsBoolean(sessionConfig, QUERY_CACHE, false);
+        if (!secondLevelCache && !queryCache) {
+            return;
+        }
+
+        config.setProperty(Environment.USE_SECOND_LEVEL_CACHE, "true");
+        config.setProperty(Environment.USE_QUERY_CACHE, String.valueOf(queryCache));
+        if (config.getProperty(Environment.CACHE_PROVIDER) == null && config.getProperty(Environment.CACHE_REGION_FACTORY) == null) {
+            config.setProperty(Environment.CACHE_PROVIDER, LocalCacheProvider.class.getName());
+        }
+
+        if (sessionConfig.containsKey(CACHE_TTL)) {
+            config.setProperty(LocalCacheProvider.TTL, String.valueOf(getConfigValueAsInt(sessionConfig, CACHE_TTL, 0)));
+        }
+        if (sessionConfig.containsKey(CACHE_MAX_ENTRIES)) {
+            config.setProperty(LocalCacheProvider.MAX_ENTRIES, String.valueOf(getConfigValueAsInt(sessionConfig, CACHE_MAX_ENTRIES, LocalCacheProvider.DEFAULT_MAX_ENTRIES)));
+        }
+
+        Object regions = getConfigValue(sessionConfig, CACHE_REGIONS, null);
+        if (regions instanceof Map) {
+            for (Map.Entry<String, Object> region : ((Map<String, Object>) regions).entrySet()) {
+                if (!(region.getValue() instanceof Map)) {
+                    continue;
+                }
+                Map<String, Object> regionConfig = (Map<String, Object>) region.getValue();
+                String prefix = LocalCacheProvider.REGION_PREFIX + region.getKey();
+                if (regionConfig.containsKey("ttl")) {
+                    config.setProperty(prefix + LocalCacheProvider.REGION_TTL_SUFFIX, String.valueOf(getConfigValueAsInt(regionConfig, "ttl", 0)));
+                }
+                if (regionConfig.containsKey("maxEntries")) {
+                    config.setProperty(prefix + LocalCacheProvider.REGION_MAX_ENTRIES_SUFFIX, String.valueOf(getConfigValueAsInt(regionConfig, "maxEntries", 0)));
+                }
+            }
+        }
     }
 
-    private void applyDialect(Configuration config) {
+    private void applyCacheConcurrencyStrategies(Configuration config) {
+        if (!getConfigValueAsBoolean(sessionConfig, SECOND_LEVEL_CACHE, false)) {
+            return;
+        }
+
+        Object entities = getConfigValue(sessionConfig, CACHED_ENTITIES, null);
+        if (entities instanceof Map) {
+            for (Map.Entry<String, Object> entity : ((Map<String, Object>) entities).entrySet()) {
+                config.setCacheConcurrencyStrategy(entity.getKey(), String.valueOf(entity.getValue()));
+            }
+        }
+
+        Object collections = getConfigValue(sessionConfig, CACHED_COLLECTIONS, null);
+        if (collections instanceof Map) {
+            for (Map.Entry<String, Object> collection : ((Map<String, Object>) collections).entrySet()) {
+                config.setCollectionCacheConcurrencyStrategy(collection.getKey(), String.valueOf(collection.getValue()));
+            }
+        }
+    }
+
+    private String resolveDialect() {
         Object dialect = getConfigValue(sessionConfig, "dialect", null);
         if (dialect instanceof Class) {
-            config.setProperty("hibernate.dialect", ((Class) dialect).getName());
+            return ((Class) dialect).getName();
         } else if (dialect != null) {
-            config.setProperty("hibernate.dialect", dialect.toString());
-        } else {
-            DialectDetector dialectDetector = new DialectDetector(application, dataSource);
-            config.setProperty("hibernate.dialect", dialectDetector.getDialect());
+            return dialect.toString();
         }
+        String dataSourceKey = DialectDetector.dataSourceKey(
+            getConfigValueAsString(dataSourceConfig, "url", null),
+            getConfigValueAsString(dataSourceConfig, "driverClassName", null));
+        File cacheFile = getConfigValueAsBoolean(sessionConfig, DIALECT_CACHE, false) ? new File(resolveCacheDirectory(), "dialects.properties") : null;
+        DialectDetector dialectDetector = new DialectDetector(application, dataSource, dataSourceKey, cacheFile);
+        return dialectDetector.getDialect();
     }
 
-    private void applyMappings(final Configuration config) {
+    private void applyBatching(Configuration config) {
+        Properties dialectDefaults = Dialect.getDialect(config.getProperties()).getDefaultProperties();
+        String dialect = config.getProperty(Environment.DIALECT);
+
+        int batchSize = getConfigValueAsInt(sessionConfig, BATCH_SIZE, -1);
+        if (batchSize > 0 && Dialect.NO_BATCH.equals(dialectDefaults.getProperty(Environment.STATEMENT_BATCH_SIZE))) {
+            LOG.warn("Ignoring {}={} on sessionFactory '{}'. Dialect {} does not support batch updates", BATCH_SIZE, batchSize, dataSourceName, dialect);
+            batchSize = 0;
+        }
+        if (batchSize >= 0) {
+            config.setProperty(Environment.STATEMENT_BATCH_SIZE, String.valueOf(batchSize));
+        }
+
+        int fetchSize = getConfigValueAsInt(sessionConfig, FETCH_SIZE, -1);
+        if (fetchSize >= 0) {
+            config.setProperty(Environment.STATEMENT_FETCH_SIZE, String.valueOf(fetchSize));
+        }
+
+        if (sessionConfig.containsKey(ORDER_INSERTS)) {
+            config.setProperty(Environment.ORDER_INSERTS, String.valueOf(getConfigValueAsBoolean(sessionConfig, ORDER_INSERTS, false)));
+        }
+        if (sessionConfig.containsKey(ORDER_UPDATES)) {
+            config.setProperty(Environment.ORDER_UPDATES, String.valueOf(getConfigValueAsBoolean(sessionConfig, ORDER_UPDATES, false)));
+        }
+
+        if (getConfigValueAsBoolean(sessionConfig, BATCH_VERSIONED_DATA, false)) {
+            if ("false".equals(dialectDefaults.getProperty(Environment.BATCH_VERSIONED_DATA))) {
+                // the driver does not report row counts for batched statements, optimistic locking would break
+                LOG.warn("Ignoring {}=true on sessionFactory '{}'. Dialect {} does not support versioned data in batches", BATCH_VERSIONED_DATA, dataSourceName, dialect);
+            } else {
+                config.setProperty(Environment.BATCH_VERSIONED_DATA, "true");
+            }
+        }
+    }
+
+    private List<String> resolveMappingResources() {
+        final List<String> resources = new ArrayList<>();
+        final List<String> includes = getConfigValue(sessionConfig, INCLUDE_MAPPINGS, Collections.<String>emptyList());
+        final List<String> excludes = getConfigValue(sessionConfig, EXCLUDE_MAPPINGS, Collections.<String>emptyList());
         TypeLoader.load(application.getApplicationClassLoader().get(), "META-INF/types", Hibernate3Mapping.class, new TypeLoader.LineProcessor() {
             @Override
             public void process(ClassLoader classLoader, Class<?> type, String line) {
                 line = line.trim();
                 if (isBlank(line)) return;
+                if (!isMappedBy(classLoader, line) ||
+                    (!includes.isEmpty() && !matchesAny(line, includes)) ||
+                    matchesAny(line, excludes)) {
+                    LOG.debug("Skipping {} on sessionFactory '{}'", line, sessionFactoryName);
+                    return;
+                }
                 line = line.replace('.', '/');
-                LOG.debug("Registering {} as hibernate resource", line + HBM_XML_SUFFIX);
-                config.addResource(line + HBM_XML_SUFFIX);
+                resources.add(line + HBM_XML_SUFFIX);
             }
         });
 
-        for (String mapping : getConfigValue(sessionConfig, "mappings", Collections.<String>emptyList())) {
+        // explicit mappings are registered regardless of includes and excludes
+        for (String mapping : getConfigValue(sessionConfig, MAPPINGS, Collections.<String>emptyList())) {
             mapping = mapping.replace('.', '/');
             if (!mapping.endsWith(HBM_XML_SUFFIX)) {
                 mapping = mapping + HBM_XML_SUFFIX;
             }
-            LOG.debug("Registering {} as hibernate resource", mapping);
-            config.addResource(mapping);
+            resources.add(mapping);
         }
+        return resources;
+    }
+
+    private boolean isMappedBy(ClassLoader classLoader, String className) {
+        try {
+            SessionFactories sessionFactories = Class.forName(className, false, classLoader).getAnnotation(SessionFactories.class);
+            return sessionFactories == null || Arrays.asList(sessionFactories.value()).contains(sessionFactoryName);
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.warn("Could not load mapping class " + className + ", registering it with sessionFactory '" + sessionFactoryName + "'", e);
+            return true;
+        }
+    }
+
+    /**
+     * Patterns are fully qualified class names, or package names followed by {@code *} which also match subpackages.
+     */
+    private static boolean matchesAny(String className, List<String> patterns) {
+        for (String pattern : patterns) {
+            if (pattern.endsWith("*") ? className.startsWith(pattern.substring(0, pattern.length() - 1)) : className.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void applyMappings(Configuration config, List<String> resources) {
+        for (String resource : resources) {
+            LOG.debug("Registering {} as hibernate resource", resource);
+            config.addResource(resource);
+        }
+    }
+
+    private File resolveCacheDirectory() {
+        Object directory = getConfigValue(sessionConfig, CONFIGURATION_CACHE_DIR, null);
+        if (directory instanceof File) {
+            return (File) directory;
+        } else if (directory != null) {
+            return new File(directory.toString());
+        }
+        return PrivateFiles.defaultCacheDirectory();
+    }
+
+    private void allowApplicationClasses(ConfigurationCache cache, List<String> resources) {
+        // mapped entities, and whatever else their packages provide such as components and user types
+        for (String resource : resources) {
+            int index = resource.lastIndexOf('/');
+            if (index > 0) {
+                cache.allow(resource.substring(0, index + 1).replace('/', '.'));
+            }
+        }
+        for (String key : new String[]{ENTITY_INTERCEPTOR, NAMING_STRATEGY}) {
+            Object value = getConfigValue(sessionConfig, key, null);
+            if (value instanceof Class) {
+                cache.allow(((Class) value).getName());
+            } else if (value != null) {
+                cache.allow(value.toString());
+            }
+        }
+    }
+
+    private String computeCacheKey(ConfigurationCache cache, String dialect, List<String> resources) {
+        cache.update(Version.getVersionString());
+        cache.update(dialect);
+        for (Map.Entry<String, Object> entry : new TreeMap<>(sessionConfig).entrySet()) {
+            cache.update(entry.getKey() + "=" + entry.getValue());
+        }
+        for (String resource : resources) {
+            cache.updateWithResource(resource);
+        }
+        return cache.computeKey();
     }
 
     private Object newInstanceOf(String className) {
@@ -180,10 +444,4 @@ public class HibernateConfigurationHelper {
     private Configuration newConfiguration() throws HibernateException {
         return new Configuration();
     }
-
-    // -------------------------------------------------
-
-    public static DataSource getDataSource() {
-        return dataSourceHolder.get();
-    }
 }
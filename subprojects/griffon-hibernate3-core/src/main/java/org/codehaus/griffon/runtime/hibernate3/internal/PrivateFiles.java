@@ -0,0 +1,140 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal;
+
+import griffon.annotations.core.Nonnull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+
+/**
+ * Cache files are read back into the application, they must live where no other user can write.
+ *
+ * @author Andres Almiray
+ */
+public final class PrivateFiles {
+    private static final Logger LOG = LoggerFactory.getLogger(PrivateFiles.class);
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+
+    private PrivateFiles() {
+        // prevent instantiation
+    }
+
+    /**
+     * Default location of cache files, private to the current user.
+     */
+    @Nonnull
+    public static File defaultCacheDirectory() {
+        return new File(System.getProperty("user.home"), ".griffon" + File.separator + "hibernate3" + File.separator + "cache");
+    }
+
+    /**
+     * Creates the directory, readable and writable by its owner only, unless it exists already.
+     *
+     * @return {@code true} if the directory exists and is private to the current user
+     */
+    public static boolean ensureDirectory(@Nonnull File directory) {
+        Path path = directory.toPath();
+        try {
+            if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (isPosix(path)) {
+                    Files.createDirectories(path, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+                } else {
+                    Files.createDirectories(path);
+                    restrictToOwner(directory);
+                }
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.warn("Cannot create cache directory " + directory, e);
+            return false;
+        }
+        return isPrivate(directory);
+    }
+
+    /**
+     * Creates an empty file readable and writable by its owner only, replacing any existing one.
+     */
+    public static void createFile(@Nonnull File file) throws IOException {
+        Path path = file.toPath();
+        Files.deleteIfExists(path);
+        if (isPosix(path)) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE));
+        } else {
+            Files.createFile(path);
+            restrictToOwner(file);
+        }
+    }
+
+    /**
+     * Whether the file is a regular file or directory (not a link), owned by the current user and not writable by
+     * anybody else.
+     */
+    public static boolean isPrivate(@Nonnull File file) {
+        Path path = file.toPath();
+        try {
+            if (Files.isSymbolicLink(path)) {
+                LOG.warn("Refusing to use {}, it is a symbolic link", file);
+                return false;
+            }
+            UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+            UserPrincipal currentUser = FileSystems.getDefault().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+            if (!owner.equals(currentUser)) {
+                LOG.warn("Refusing to use {}, it is owned by {} rather than {}", file, owner.getName(), currentUser.getName());
+                return false;
+            }
+            if (isPosix(path)) {
+                Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+                if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                    LOG.warn("Refusing to use {}, it is writable by other users", file);
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.warn("Refusing to use " + file + ", its owner cannot be verified", e);
+            return false;
+        }
+    }
+
+    private static boolean isPosix(@Nonnull Path path) {
+        return Files.getFileAttributeView(path, PosixFileAttributeView.class) != null;
+    }
+
+    private static void restrictToOwner(@Nonnull File file) {
+        file.setReadable(false, false);
+        file.setWritable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(true, true);
+        if (file.isDirectory()) {
+            file.setExecutable(false, false);
+            file.setExecutable(true, true);
+        }
+    }
+}
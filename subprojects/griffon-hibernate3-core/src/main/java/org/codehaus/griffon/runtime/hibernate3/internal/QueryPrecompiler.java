@@ -0,0 +1,105 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.hibernate.engine.NamedQueryDefinition;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Translates HQL queries into Hibernate's query plan cache ahead of their first execution.
+ * Each entry may be the name of a named query or an HQL string.
+ *
+ * @author Andres Almiray
+ */
+public class QueryPrecompiler {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryPrecompiler.class);
+
+    private final String sessionFactoryName;
+    private final SessionFactoryImplementor sessionFactory;
+
+    public QueryPrecompiler(@Nonnull String sessionFactoryName, @Nonnull SessionFactoryImplementor sessionFactory) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        this.sessionFactory = requireNonNull(sessionFactory, "Argument 'sessionFactory' must not be null");
+    }
+
+    /**
+     * Reads the {@code precompileQueries} setting, either a list of entries or a single one.
+     */
+    @Nonnull
+    public static Iterable<?> queriesOf(@Nonnull String sessionFactoryName, @Nullable Object setting) {
+        if (setting == null) {
+            return Collections.emptyList();
+        } else if (setting instanceof CharSequence) {
+            return Collections.singletonList(setting.toString());
+        } else if (setting instanceof Iterable) {
+            return (Iterable<?>) setting;
+        }
+        throw new IllegalArgumentException("Invalid value for 'precompileQueries' on sessionFactory '" + sessionFactoryName + "': " + setting +
+            ". Must be a List of HQL queries or names of named queries");
+    }
+
+    /**
+     * Returns the queries that could not be translated, along with the reason. Named queries are left to Hibernate,
+     * which checks them when the SessionFactory is built; named HQL queries are only translated here when that check
+     * is disabled, named native SQL queries never are.
+     */
+    @Nonnull
+    public Map<String, String> precompile(@Nonnull Iterable<?> queries) {
+        long start = System.nanoTime();
+        int total = 0;
+        int skipped = 0;
+        boolean namedQueriesChecked = sessionFactory.getSettings().isNamedQueryStartupCheckingEnabled();
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (Object query : queries) {
+            String entry = String.valueOf(query);
+            total++;
+            try {
+                NamedQueryDefinition namedQuery = sessionFactory.getNamedQuery(entry);
+                if ((namedQuery != null && namedQueriesChecked) || sessionFactory.getNamedSQLQuery(entry) != null) {
+                    skipped++;
+                    continue;
+                }
+                String hql = namedQuery != null ? namedQuery.getQueryString() : entry;
+                sessionFactory.getQueryPlanCache().getHQLQueryPlan(hql, false, Collections.emptyMap());
+            } catch (RuntimeException e) {
+                failures.put(entry, e.getMessage());
+            }
+        }
+
+        if (total > 0) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LOG.info("Precompiled {} of {} queries for sessionFactory '{}' in {}ms, {} named queries were left to Hibernate", total - skipped - failures.size(), total, sessionFactoryName, elapsed, skipped);
+            for (Map.Entry<String, String> failure : failures.entrySet()) {
+                LOG.warn("Query '{}' on sessionFactory '{}' failed to compile: {}", failure.getKey(), sessionFactoryName, failure.getValue());
+            }
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Skips schema work when the mapped model has not changed since it was last applied. The model is identified by a
+ * hash of the DDL it generates, which is stored in a table of its own; when the hash differs the schema is updated and
+ * the new hash is stored.
+ *
+ * @author Andres Almiray
+ */
+public class SchemaFingerprint {
+    public static final String TABLE_NAME = "griffon_schema_fingerprint";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaFingerprint.class);
+
+    private final String sessionFactoryName;
+    private final Configuration configuration;
+    private final DataSource dataSource;
+
+    public SchemaFingerprint(@Nonnull String sessionFactoryName, @Nonnull Configuration configuration, @Nonnull DataSource dataSource) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        this.configuration = requireNonNull(configuration, "Argument 'configuration' must not be null");
+        this.dataSource = requireNonNull(dataSource, "Argument 'dataSource' must not be null");
+    }
+
+    /**
+     * Hash of the dialect and of the DDL that creates the mapped schema from scratch.
+     */
+    @Nonnull
+    public String compute() {
+        Dialect dialect = Dialect.getDialect(configuration.getProperties());
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(dialect.getClass().getName().getBytes(StandardCharsets.UTF_8));
+            for (String statement : configuration.generateSchemaCreationScript(dialect)) {
+                digest.update((byte) '\n');
+                digest.update(statement.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new HibernateException("Cannot compute schema fingerprint of sessionFactory '" + sessionFactoryName + "'", e);
+        }
+    }
+
+    /**
+     * Updates the schema unless its stored fingerprint matches the mapped model.
+     *
+     * @return {@code true} if the schema was updated
+     */
+    public boolean synchronize() {
+        long start = System.nanoTime();
+        String fingerprint = compute();
+        String stored;
+        try (Connection connection = dataSource.getConnection()) {
+            createTableIfMissing(connection);
+            stored = read(connection);
+        } catch (SQLException e) {
+            throw new HibernateException("Cannot read schema fingerprint of sessionFactory '" + sessionFactoryName + "'", e);
+        }
+
+        if (fingerprint.equals(stored)) {
+            LOG.info("Schema of sessionFactory '{}' is unchanged, skipping schema update ({}ms)", sessionFactoryName, elapsedMillis(start));
+            return false;
+        }
+
+        SchemaUpdate schemaUpdate = new SchemaUpdate(configuration);
+        schemaUpdate.execute(false, true);
+        List<?> exceptions = schemaUpdate.getExceptions();
+        if (!exceptions.isEmpty()) {
+            // keep the previous fingerprint so that the update is attempted again on next launch
+            LOG.warn("Schema update of sessionFactory '{}' failed with {} errors, fingerprint not stored", sessionFactoryName, exceptions.size());
+            return true;
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            write(connection, fingerprint, stored != null);
+        } catch (SQLException e) {
+            throw new HibernateException("Cannot store schema fingerprint of sessionFactory '" + sessionFactoryName + "'", e);
+        }
+        LOG.info("Schema of sessionFactory '{}' changed, updated it in {}ms", sessionFactoryName, elapsedMillis(start));
+        return true;
+    }
+
+    private void createTableIfMissing(@Nonnull Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String tableName : new String[]{TABLE_NAME, TABLE_NAME.toUpperCase(), TABLE_NAME.toLowerCase()}) {
+            try (ResultSet tables = metaData.getTables(null, null, tableName, new String[]{"TABLE"})) {
+                if (tables.next()) {
+                    return;
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("create table " + TABLE_NAME + " (name varchar(255) not null primary key, fingerprint varchar(64) not null, updated_at timestamp not null)");
+        }
+        commitIfNeeded(connection);
+    }
+
+    @Nullable
+    private String read(@Nonnull Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select fingerprint from " + TABLE_NAME + " where name = ?")) {
+            statement.setString(1, sessionFactoryName);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private void write(@Nonnull Connection connection, @Nonnull String fingerprint, boolean exists) throws SQLException {
+        String sql = exists ?
+            "update " + TABLE_NAME + " set fingerprint = ?, updated_at = ? where name = ?" :
+            "insert into " + TABLE_NAME + " (fingerprint, updated_at, name) values (?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, fingerprint);
+            statement.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+            statement.setString(3, sessionFactoryName);
+            statement.executeUpdate();
+        }
+        commitIfNeeded(connection);
+    }
+
+    private static void commitIfNeeded(@Nonnull Connection connection) throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.commit();
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal;
+
+import griffon.annotations.core.Nullable;
+import org.hibernate.PessimisticLockException;
+import org.hibernate.StaleStateException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.Oracle8iDialect;
+import org.hibernate.dialect.Oracle9Dialect;
+import org.hibernate.dialect.SQLServerDialect;
+import org.hibernate.dialect.SybaseDialect;
+import org.hibernate.exception.LockAcquisitionException;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tells apart failures that are likely to go away when the transaction is run again: deadlocks, serialization
+ * failures, lock timeouts and stale state detected by optimistic locking.
+ *
+ * @author Andres Almiray
+ */
+public abstract class TransientFailures {
+    /**
+     * SQLStates of deadlocks and serialization failures (40001, 40P01 on PostgreSQL), lock timeouts
+     * (55P03 on PostgreSQL, HYT00 on H2, 57033 on DB2) and transaction rollbacks (40000).
+     */
+    private static final Set<String> SQL_STATES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "40000", "40001", "40P01", "55P03", "HYT00", "57033"
+    )));
+
+    /**
+     * Deadlock (1213) and lock wait timeout (1205).
+     */
+    private static final Set<Integer> MYSQL_ERROR_CODES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(1205, 1213)));
+
+    /**
+     * Deadlock (ORA-00060), serialization failure (ORA-08177) and resource busy (ORA-00054, ORA-30006).
+     */
+    private static final Set<Integer> ORACLE_ERROR_CODES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(60, 8177, 54, 30006)));
+
+    /**
+     * Deadlock victim (1205) and lock request timeout (1222).
+     */
+    private static final Set<Integer> TRANSACT_SQL_ERROR_CODES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(1205, 1222)));
+
+    public static boolean isTransient(@Nullable Throwable failure, @Nullable Dialect dialect) {
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof StaleStateException ||
+                t instanceof LockAcquisitionException ||
+                t instanceof PessimisticLockException ||
+                t instanceof SQLTransactionRollbackException) {
+                return true;
+            }
+            if (t instanceof SQLException && isTransient((SQLException) t, dialect)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTransient(SQLException e, @Nullable Dialect dialect) {
+        Set<Integer> errorCodes = errorCodesOf(dialect);
+        for (SQLException sqle = e; sqle != null; sqle = sqle.getNextException()) {
+            if (sqle.getSQLState() != null && SQL_STATES.contains(sqle.getSQLState())) {
+                return true;
+            }
+            if (errorCodes.contains(sqle.getErrorCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<Integer> errorCodesOf(@Nullable Dialect dialect) {
+        if (dialect instanceof MySQLDialect) {
+            return MYSQL_ERROR_CODES;
+        } else if (dialect instanceof Oracle8iDialect || dialect instanceof Oracle9Dialect) {
+            return ORACLE_ERROR_CODES;
+        } else if (dialect instanceof SQLServerDialect || dialect instanceof SybaseDialect) {
+            return TRANSACT_SQL_ERROR_CODES;
+        }
+        return Collections.emptySet();
+    }
+}
@@ -19,11 +19,33 @@ package org.codehaus.griffon.runtime.hibernate3.monitor;
 
 import griffon.annotations.core.Nonnull;
 import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.hibernate3.AsyncSessionExecutor;
 import org.codehaus.griffon.runtime.hibernate3.RecordingSessionFactory;
+import org.codehaus.griffon.runtime.hibernate3.ReplicaRouter;
+import org.codehaus.griffon.runtime.hibernate3.SessionLimiter;
+import org.codehaus.griffon.runtime.hibernate3.SessionMetrics;
+import org.codehaus.griffon.runtime.hibernate3.SlowOperationDetector;
+import org.codehaus.griffon.runtime.hibernate3.internal.ConnectionPoolMetrics;
 import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.hibernate.Cache;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
 
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanNotificationInfo;
 import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.Objects.requireNonNull;
 
@@ -31,23 +53,36 @@ import static java.util.Objects.requireNonNull;
  * @author Andres Almiray
  * @since 1.2.0
  */
-public class SessionFactoryMonitor extends AbstractMBeanRegistration implements SessionFactoryMonitorMXBean {
+public class SessionFactoryMonitor extends AbstractMBeanRegistration implements SessionFactoryMonitorMXBean, NotificationEmitter, SlowOperationDetector.Listener {
+    public static final String NOTIFICATION_SLOW_SESSION = "griffon.plugins.hibernate3.slowSession";
+    public static final String NOTIFICATION_SLOW_QUERY = "griffon.plugins.hibernate3.slowQuery";
+
     private RecordingSessionFactory delegate;
     private final String name;
+    private final AtomicLong sequenceNumber = new AtomicLong(0);
+    private final NotificationBroadcasterSupport broadcaster = new NotificationBroadcasterSupport(
+        new MBeanNotificationInfo(new String[]{NOTIFICATION_SLOW_SESSION, NOTIFICATION_SLOW_QUERY}, Notification.class.getName(), "Sessions or queries slower than the configured threshold"));
+    private ObjectName objectName;
 
     public SessionFactoryMonitor(@Nonnull Metadata metadata, @Nonnull RecordingSessionFactory delegate, @Nonnull String name) {
         super(metadata);
         this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
         this.name = name;
+        if (delegate.getSlowOperationDetector() != null) {
+            delegate.getSlowOperationDetector().addListener(this);
+        }
     }
 
     @Override
     public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
-        return new ObjectName("griffon.plugins.hibernate3:type=SessionFactory,application=" + metadata.getApplicationName() + ",name=" + this.name);
+        return objectName = new ObjectName("griffon.plugins.hibernate3:type=SessionFactory,application=" + metadata.getApplicationName() + ",name=" + this.name);
     }
 
     @Override
     public void postDeregister() {
+        if (delegate.getSlowOperationDetector() != null) {
+            delegate.getSlowOperationDetector().removeListener(this);
+        }
         delegate = null;
         super.postDeregister();
     }
@@ -56,4 +91,348 @@ public class SessionFactoryMonitor extends AbstractMBeanRegistration implements
     public int getSessionCount() {
         return delegate.getSessionCount();
     }
+
+    @Override
+    public int getAsyncPoolSize() {
+        AsyncSessionExecutor executor = delegate.getAsyncExecutor();
+        return executor != null ? executor.getMaximumPoolSize() : 0;
+    }
+
+    @Override
+    public int getAsyncActiveCount() {
+        AsyncSessionExecutor executor = delegate.getAsyncExecutor();
+        return executor != null ? executor.getActiveCount() : 0;
+    }
+
+    @Override
+    public int getAsyncQueueDepth() {
+        AsyncSessionExecutor executor = delegate.getAsyncExecutor();
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    @Override
+    public int getAsyncQueueRemainingCapacity() {
+        AsyncSessionExecutor executor = delegate.getAsyncExecutor();
+        return executor != null ? executor.getQueue().remainingCapacity() : 0;
+    }
+
+    @Override
+    public long getAsyncCompletedTaskCount() {
+        AsyncSessionExecutor executor = delegate.getAsyncExecutor();
+        return executor != null ? executor.getCompletedTaskCount() : 0;
+    }
+
+    @Override
+    public long getAsyncRejectedTaskCount() {
+        AsyncSessionExecutor executor = delegate.getAsyncExecutor();
+        return executor != null ? executor.getRejectedTaskCount() : 0;
+    }
+
+    @Override
+    public long getOpenedSessionCount() {
+        return metrics().getOpenedSessionCount();
+    }
+
+    @Override
+    public long getClosedSessionCount() {
+        return metrics().getClosedSessionCount();
+    }
+
+    @Override
+    public double getSessionOpenRate() {
+        return metrics().getSessionOpenRate();
+    }
+
+    @Override
+    public double getSessionCloseRate() {
+        return metrics().getSessionCloseRate();
+    }
+
+    @Override
+    public double getAverageSessionDurationMillis() {
+        return metrics().getAverageSessionDurationMillis();
+    }
+
+    @Override
+    public long getMaxSessionDurationMillis() {
+        return metrics().getMaxSessionDurationMillis();
+    }
+
+    @Override
+    public Map<String, Long> getSessionDurationHistogram() {
+        return metrics().getSessionDurationHistogram();
+    }
+
+    @Override
+    public long getCommittedTransactionCount() {
+        return metrics().getCommittedTransactionCount();
+    }
+
+    @Override
+    public long getRolledBackTransactionCount() {
+        return metrics().getRolledBackTransactionCount();
+    }
+
+    @Override
+    public long getFailedCallbackCount() {
+        return metrics().getFailedCallbackCount();
+    }
+
+    @Override
+    public long getRetriedTransactionCount() {
+        return metrics().getRetriedTransactionCount();
+    }
+
+    @Override
+    public long getExhaustedRetryCount() {
+        return metrics().getExhaustedRetryCount();
+    }
+
+    @Override
+    public boolean isStatisticsEnabled() {
+        return statistics().isStatisticsEnabled();
+    }
+
+    @Override
+    public void setStatisticsEnabled(boolean enabled) {
+        statistics().setStatisticsEnabled(enabled);
+    }
+
+    @Override
+    public void resetStatistics() {
+        statistics().clear();
+    }
+
+    @Override
+    public long getQueryExecutionCount() {
+        return statistics().getQueryExecutionCount();
+    }
+
+    @Override
+    public long getQueryExecutionMaxTime() {
+        return statistics().getQueryExecutionMaxTime();
+    }
+
+    @Override
+    public String getQueryExecutionMaxTimeQueryString() {
+        return statistics().getQueryExecutionMaxTimeQueryString();
+    }
+
+    @Override
+    public long getEntityLoadCount() {
+        return statistics().getEntityLoadCount();
+    }
+
+    @Override
+    public long getEntityFetchCount() {
+        return statistics().getEntityFetchCount();
+    }
+
+    @Override
+    public long getSecondLevelCacheHitCount() {
+        return statistics().getSecondLevelCacheHitCount();
+    }
+
+    @Override
+    public long getSecondLevelCacheMissCount() {
+        return statistics().getSecondLevelCacheMissCount();
+    }
+
+    @Override
+    public long getSecondLevelCachePutCount() {
+        return statistics().getSecondLevelCachePutCount();
+    }
+
+    @Override
+    public long getQueryCacheHitCount() {
+        return statistics().getQueryCacheHitCount();
+    }
+
+    @Override
+    public long getQueryCacheMissCount() {
+        return statistics().getQueryCacheMissCount();
+    }
+
+    @Override
+    public int getPoolMaximumSize() {
+        ConnectionPoolMetrics poolMetrics = delegate.getConnectionPoolMetrics();
+        return poolMetrics != null ? poolMetrics.getMaximumPoolSize() : -1;
+    }
+
+    @Override
+    public int getPoolActiveConnections() {
+        ConnectionPoolMetrics poolMetrics = delegate.getConnectionPoolMetrics();
+        return poolMetrics != null ? poolMetrics.getActiveConnections() : -1;
+    }
+
+    @Override
+    public int getPoolIdleConnections() {
+        ConnectionPoolMetrics poolMetrics = delegate.getConnectionPoolMetrics();
+        return poolMetrics != null ? poolMetrics.getIdleConnections() : -1;
+    }
+
+    @Override
+    public int getPoolTotalConnections() {
+        ConnectionPoolMetrics poolMetrics = delegate.getConnectionPoolMetrics();
+        return poolMetrics != null ? poolMetrics.getTotalConnections() : -1;
+    }
+
+    @Override
+    public int getPoolThreadsAwaitingConnection() {
+        ConnectionPoolMetrics poolMetrics = delegate.getConnectionPoolMetrics();
+        return poolMetrics != null ? poolMetrics.getThreadsAwaitingConnection() : -1;
+    }
+
+    @Override
+    public int getBorrowedConnections() {
+        ConnectionPoolMetrics poolMetrics = delegate.getConnectionPoolMetrics();
+        return poolMetrics != null ? poolMetrics.getBorrowedConnections() : 0;
+    }
+
+    @Override
+    public long getConnectionBorrowCount() {
+        ConnectionPoolMetrics poolMetrics = delegate.getConnectionPoolMetrics();
+        return poolMetrics != null ? poolMetrics.getBorrowCount() : 0;
+    }
+
+    @Override
+    public long getConnectionBorrowFailureCount() {
+        ConnectionPoolMetrics poolMetrics = delegate.getConnectionPoolMetrics();
+        return poolMetrics != null ? poolMetrics.getBorrowFailureCount() : 0;
+    }
+
+    @Override
+    public double getAverageConnectionBorrowWaitMillis() {
+        ConnectionPoolMetrics poolMetrics = delegate.getConnectionPoolMetrics();
+        return poolMetrics != null ? poolMetrics.getAverageBorrowWaitMillis() : 0d;
+    }
+
+    @Override
+    public double getMaxConnectionBorrowWaitMillis() {
+        ConnectionPoolMetrics poolMetrics = delegate.getConnectionPoolMetrics();
+        return poolMetrics != null ? poolMetrics.getMaxBorrowWaitMillis() : 0d;
+    }
+
+    @Override
+    public long getSessionOverflowCount() {
+        SessionLimiter sessionLimiter = delegate.getSessionLimiter();
+        return sessionLimiter != null ? sessionLimiter.getOverflowCount() : 0;
+    }
+
+    @Override
+    public List<String> getReplicas() {
+        ReplicaRouter replicaRouter = delegate.getReplicaRouter();
+        return replicaRouter != null ? new ArrayList<>(replicaRouter.getReplicas().keySet()) : Collections.<String>emptyList();
+    }
+
+    @Override
+    public List<String> getHealthyReplicas() {
+        ReplicaRouter replicaRouter = delegate.getReplicaRouter();
+        return replicaRouter != null ? replicaRouter.getHealthyReplicas() : Collections.<String>emptyList();
+    }
+
+    @Override
+    public void checkReplicaHealth() {
+        ReplicaRouter replicaRouter = delegate.getReplicaRouter();
+        if (replicaRouter != null) {
+            replicaRouter.checkHealth();
+        }
+    }
+
+    @Override
+    public double getSecondLevelCacheHitRatio() {
+        Statistics statistics = statistics();
+        return ratio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount());
+    }
+
+    @Override
+    public double getQueryCacheHitRatio() {
+        Statistics statistics = statistics();
+        return ratio(statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount());
+    }
+
+    @Override
+    public Map<String, Double> getSecondLevelCacheRegionHitRatios() {
+        Statistics statistics = statistics();
+        Map<String, Double> ratios = new TreeMap<>();
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(regionName);
+            if (regionStatistics != null) {
+                ratios.put(regionName, ratio(regionStatistics.getHitCount(), regionStatistics.getMissCount()));
+            }
+        }
+        return ratios;
+    }
+
+    @Override
+    public void evictEntityRegion(String entityName) {
+        delegate.getCache().evictEntityRegion(entityName);
+    }
+
+    @Override
+    public void evictCollectionRegion(String role) {
+        delegate.getCache().evictCollectionRegion(role);
+    }
+
+    @Override
+    public void evictQueryRegion(String regionName) {
+        delegate.getCache().evictQueryRegion(regionName);
+    }
+
+    @Override
+    public void evictAllRegions() {
+        Cache cache = delegate.getCache();
+        cache.evictEntityRegions();
+        cache.evictCollectionRegions();
+        cache.evictDefaultQueryRegion();
+        cache.evictQueryRegions();
+    }
+
+    @Override
+    public void slowOperation(@Nonnull SlowOperationDetector.Kind kind, @Nonnull String sessionFactoryName, String statement, long elapsedMillis, @Nonnull StackTraceElement[] stackSample) {
+        String type = kind == SlowOperationDetector.Kind.SESSION ? NOTIFICATION_SLOW_SESSION : NOTIFICATION_SLOW_QUERY;
+        String message = kind == SlowOperationDetector.Kind.SESSION ?
+            "Session was open for " + elapsedMillis + "ms" :
+            "Query took " + elapsedMillis + "ms: " + statement;
+        Notification notification = new Notification(type, objectName != null ? objectName : this, sequenceNumber.incrementAndGet(), message);
+        StringBuilder stack = new StringBuilder();
+        for (StackTraceElement frame : stackSample) {
+            stack.append(frame).append(System.lineSeparator());
+        }
+        notification.setUserData(stack.toString());
+        broadcaster.sendNotification(notification);
+    }
+
+    @Override
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+        broadcaster.addNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+        broadcaster.removeNotificationListener(listener);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws ListenerNotFoundException {
+        broadcaster.removeNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public MBeanNotificationInfo[] getNotificationInfo() {
+        return broadcaster.getNotificationInfo();
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total > 0 ? (double) hits / total : 0d;
+    }
+
+    private SessionMetrics metrics() {
+        return delegate.getMetrics();
+    }
+
+    private Statistics statistics() {
+        return delegate.getStatistics();
+    }
 }
@@ -17,10 +17,117 @@
  */
 package org.codehaus.griffon.runtime.hibernate3.monitor;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author Andres Almiray
  * @since 1.2.0
  */
 public interface SessionFactoryMonitorMXBean {
     int getSessionCount();
+
+    int getAsyncPoolSize();
+
+    int getAsyncActiveCount();
+
+    int getAsyncQueueDepth();
+
+    int getAsyncQueueRemainingCapacity();
+
+    long getAsyncCompletedTaskCount();
+
+    long getAsyncRejectedTaskCount();
+
+    long getOpenedSessionCount();
+
+    long getClosedSessionCount();
+
+    double getSessionOpenRate();
+
+    double getSessionCloseRate();
+
+    double getAverageSessionDurationMillis();
+
+    long getMaxSessionDurationMillis();
+
+    Map<String, Long> getSessionDurationHistogram();
+
+    long getCommittedTransactionCount();
+
+    long getRolledBackTransactionCount();
+
+    long getFailedCallbackCount();
+
+    long getRetriedTransactionCount();
+
+    long getExhaustedRetryCount();
+
+    boolean isStatisticsEnabled();
+
+    void setStatisticsEnabled(boolean enabled);
+
+    void resetStatistics();
+
+    long getQueryExecutionCount();
+
+    long getQueryExecutionMaxTime();
+
+    String getQueryExecutionMaxTimeQueryString();
+
+    long getEntityLoadCount();
+
+    long getEntityFetchCount();
+
+    long getSecondLevelCacheHitCount();
+
+    long getSecondLevelCacheMissCount();
+
+    long getSecondLevelCachePutCount();
+
+    long getQueryCacheHitCount();
+
+    long getQueryCacheMissCount();
+
+    int getPoolMaximumSize();
+
+    int getPoolActiveConnections();
+
+    int getPoolIdleConnections();
+
+    int getPoolTotalConnections();
+
+    int getPoolThreadsAwaitingConnection();
+
+    int getBorrowedConnections();
+
+    long getConnectionBorrowCount();
+
+    long getConnectionBorrowFailureCount();
+
+    double getAverageConnectionBorrowWaitMillis();
+
+    double getMaxConnectionBorrowWaitMillis();
+
+    long getSessionOverflowCount();
+
+    List<String> getReplicas();
+
+    List<String> getHealthyReplicas();
+
+    void checkReplicaHealth();
+
+    double getSecondLevelCacheHitRatio();
+
+    double getQueryCacheHitRatio();
+
+    Map<String, Double> getSecondLevelCacheRegionHitRatios();
+
+    void evictEntityRegion(String entityName);
+
+    void evictCollectionRegion(String role);
+
+    void evictQueryRegion(String regionName);
+
+    void evictAllRegions();
 }
@@ -19,6 +19,7 @@ package griffon.plugins.hibernate3
 
 import griffon.annotations.inject.BindTo
 import griffon.core.GriffonApplication
+import griffon.plugins.datasource.DataSourceStorage
 import griffon.plugins.datasource.events.DataSourceConnectEndEvent
 import griffon.plugins.datasource.events.DataSourceConnectStartEvent
 import griffon.plugins.datasource.events.DataSourceDisconnectEndEvent
@@ -30,13 +31,28 @@ import griffon.plugins.hibernate3.events.Hibernate3DisconnectEndEvent
 import griffon.plugins.hibernate3.events.Hibernate3DisconnectStartEvent
 import griffon.plugins.hibernate3.exceptions.RuntimeHibernate3Exception
 import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.hibernate3.RecordingSessionFactory
+import org.codehaus.griffon.runtime.hibernate3.SessionLimiter
+import org.codehaus.griffon.runtime.hibernate3.SessionMetrics
+import org.hibernate.FlushMode
+import org.hibernate.HibernateException
 import org.hibernate.Session
+import org.hibernate.SessionFactory
+import org.hibernate.StaleObjectStateException
+import org.hibernate.StaleStateException
+import org.hibernate.StatelessSession
+import org.hibernate.stat.Statistics
 import org.junit.Rule
 import spock.lang.Specification
 import spock.lang.Unroll
 
 import javax.application.event.EventHandler
 import javax.inject.Inject
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
 
 @Unroll
 class Hibernate3Spec extends Specification {
@@ -53,6 +69,15 @@ class Hibernate3Spec extends Specification {
     @Inject
     private GriffonApplication application
 
+    @Inject
+    private Hibernate3Storage hibernate3Storage
+
+    @Inject
+    private Hibernate3Factory hibernate3Factory
+
+    @Inject
+    private DataSourceStorage dataSourceStorage
+
     void 'Open and close default hibernate3'() {
         given:
         List eventNames = [
@@ -110,6 +135,28 @@ class Hibernate3Spec extends Specification {
         bootstrap.destroyWitness
     }
 
+    void 'SessionFactories that fail to start release what they acquired'() {
+        given:
+        bootstrap.initFailure = new IllegalStateException('init failed')
+
+        when:
+        hibernate3Handler.withHbm3Session('internal') { String sessionFactoryName, Session session -> }
+
+        then:
+        thrown(IllegalStateException)
+        bootstrap.initSessionFactory.closed
+        !dataSourceStorage.get('internal')
+
+        when:
+        bootstrap.initFailure = null
+        boolean connected = hibernate3Handler.withHbm3Session('internal') { String sessionFactoryName, Session session ->
+            !session.sessionFactory.closed
+        }
+
+        then:
+        connected
+    }
+
     void 'Can connect to #name SessionFactory'() {
         expect:
         hibernate3Handler.withHbm3Session(name) { String sessionFactoryName, Session session ->
@@ -161,6 +208,493 @@ class Hibernate3Spec extends Specification {
         peopleIn == peopleOut
     }
 
+    void 'Read-only session neither flushes nor tracks changes'() {
+        given:
+        hibernate3Handler.withHbm3Session { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+
+        when:
+        Map result = hibernate3Handler.withHbm3ReadOnlySession { String sessionFactoryName, Session session ->
+            Person person = session.createQuery('from Person').uniqueResult()
+            person.name = 'Changed'
+            [flushMode: session.flushMode, readOnly: session.defaultReadOnly]
+        }
+
+        List peopleOut = hibernate3Handler.withHbm3Session { String sessionFactoryName, Session session ->
+            session.createQuery('from Person').list()*.name
+        }
+
+        then:
+        result.flushMode == FlushMode.MANUAL
+        result.readOnly
+        peopleOut == ['Danno']
+    }
+
+    void 'Nested sessions join the enclosing session unless a new one is required'() {
+        when:
+        Map sessions = hibernate3Handler.withHbm3Session { String sessionFactoryName, Session outer ->
+            [
+                required   : hibernate3Handler.withHbm3Session { String n, Session inner -> inner.is(outer) },
+                readOnly   : hibernate3Handler.withHbm3ReadOnlySession { String n, Session inner -> inner.is(outer) },
+                requiresNew: hibernate3Handler.withHbm3Session(Propagation.REQUIRES_NEW) { String n, Session inner -> inner.is(outer) },
+                other      : hibernate3Handler.withHbm3Session('people') { String n, Session inner -> inner.is(outer) }
+            ]
+        }
+
+        then:
+        sessions == [required: true, readOnly: true, requiresNew: false, other: false]
+    }
+
+    void 'A failure in a joined session rolls back the enclosing transaction'() {
+        when:
+        hibernate3Handler.withHbm3Session { String sessionFactoryName, Session session ->
+            session.save(new Person(name: 'Danno', lastname: 'Ferrin'))
+            try {
+                hibernate3Handler.withHbm3Session { String n, Session inner ->
+                    throw new IllegalStateException('boom')
+                }
+            } catch (RuntimeHibernate3Exception ignored) {
+                // swallowed on purpose
+            }
+        }
+
+        Number count = hibernate3Handler.withHbm3Session { String sessionFactoryName, Session session ->
+            session.createQuery('select count(*) from Person').uniqueResult()
+        }
+
+        then:
+        count == 0
+    }
+
+    void 'Transient failures are retried in a new session'() {
+        given:
+        int attempts = 0
+
+        when:
+        hibernate3Handler.withHbm3Session(new RetryPolicy(3, 1, 10)) { String sessionFactoryName, Session session ->
+            session.save(new Person(name: "name${++attempts}", lastname: 'Ferrin'))
+            if (attempts < 3) {
+                session.flush()
+                throw new StaleObjectStateException(Person.name, attempts)
+            }
+        }
+
+        List names = hibernate3Handler.withHbm3Session { String sessionFactoryName, Session session ->
+            session.createQuery('from Person').list()*.name
+        }
+        SessionMetrics metrics = RecordingSessionFactory.unwrap(hibernate3Storage.get('default')).metrics
+
+        then:
+        attempts == 3
+        names == ['name3']
+        metrics.retriedTransactionCount == 2
+        metrics.exhaustedRetryCount == 0
+    }
+
+    void 'Retries follow the policy of the SessionFactory and give up after the last attempt'() {
+        given:
+        int attempts = 0
+
+        when:
+        hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session ->
+            attempts++
+            throw new StaleObjectStateException(Person.name, attempts)
+        }
+
+        then:
+        thrown(RuntimeHibernate3Exception)
+        attempts == 3
+        RecordingSessionFactory.unwrap(hibernate3Storage.get('people')).metrics.exhaustedRetryCount == 1
+    }
+
+    void 'Conflicts raised when the transaction commits are retried without leaking sessions'() {
+        given:
+        int id = hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Person(name: 'Danno', lastname: 'Ferrin'))
+        }
+        int attempts = 0
+
+        when:
+        hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session ->
+            Person person = session.get(Person, id)
+            if (++attempts == 1) {
+                // the row is gone by the time the update is flushed on commit
+                hibernate3Handler.withHbm3Session('people', Propagation.REQUIRES_NEW) { String n, Session other ->
+                    other.createQuery('delete from Person where id = :id').setParameter('id', id).executeUpdate()
+                }
+            }
+            if (person) {
+                person.lastname = 'Changed'
+            } else {
+                session.save(new Person(name: 'Danno', lastname: 'Changed'))
+            }
+        }
+        RecordingSessionFactory sessionFactory = RecordingSessionFactory.unwrap(hibernate3Storage.get('people'))
+
+        then:
+        attempts == 2
+        sessionFactory.sessionCount == 0
+        sessionFactory.metrics.retriedTransactionCount == 1
+    }
+
+    void 'Failed commits roll back and close the session'() {
+        given:
+        int id = hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Person(name: 'Danno', lastname: 'Ferrin'))
+        }
+
+        when:
+        hibernate3Handler.withHbm3Session('people', RetryPolicy.NONE) { String sessionFactoryName, Session session ->
+            Person person = session.get(Person, id)
+            hibernate3Handler.withHbm3Session('people', Propagation.REQUIRES_NEW) { String n, Session other ->
+                other.createQuery('delete from Person where id = :id').setParameter('id', id).executeUpdate()
+            }
+            person.lastname = 'Changed'
+        }
+
+        then:
+        RuntimeHibernate3Exception e = thrown(RuntimeHibernate3Exception)
+        e.cause instanceof StaleStateException
+        RecordingSessionFactory.unwrap(hibernate3Storage.get('people')).sessionCount == 0
+    }
+
+    void 'Failures other than transient ones are not retried'() {
+        given:
+        int attempts = 0
+
+        when:
+        hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session ->
+            attempts++
+            throw new IllegalStateException('boom')
+        }
+
+        then:
+        thrown(RuntimeHibernate3Exception)
+        attempts == 1
+    }
+
+    void 'Stateless session inserts rows without a persistence context'() {
+        when:
+        hibernate3Handler.withHbm3StatelessSession { String sessionFactoryName, StatelessSession session ->
+            (1..100).each { i ->
+                session.insert(new Person(name: "name${i}", lastname: "lastname${i}"))
+            }
+        }
+
+        Number count = hibernate3Handler.withHbm3StatelessSession { String sessionFactoryName, StatelessSession session ->
+            session.createQuery('select count(*) from Person').uniqueResult()
+        }
+
+        then:
+        count == 100
+    }
+
+    void 'Entities are flushed in batches on #name SessionFactory'() {
+        when:
+        int saved = hibernate3Handler.withHbm3Session(name) { String sessionFactoryName, Session session ->
+            hibernate3Handler.flushEvery(session, 20, (1..50).collect { i ->
+                new Person(name: "name${i}", lastname: "lastname${i}")
+            })
+        }
+
+        Number count = hibernate3Handler.withHbm3ReadOnlySession(name) { String sessionFactoryName, Session session ->
+            session.createQuery('select count(*) from Person').uniqueResult()
+        }
+
+        then:
+        saved == 50
+        count == 50
+
+        where:
+        name      | _
+        'default' | _
+        'people'  | _
+    }
+
+    void 'Rows are streamed from #name SessionFactory without filling the session'() {
+        given:
+        hibernate3Handler.withHbm3Session(name) { String sessionFactoryName, Session session ->
+            hibernate3Handler.flushEvery(session, 20, (1..50).collect { i ->
+                new Person(name: "name${i}", lastname: i % 2 ? 'odd' : 'even')
+            })
+        }
+        List<String> names = []
+        int maxEntities = 0
+
+        when:
+        long count = hibernate3Handler.streamHbm3(name, 'from Person where lastname = :lastname order by id', [lastname: 'odd']) { String sessionFactoryName, Session session, Person person ->
+            names << person.name
+            maxEntities = Math.max(maxEntities, session.statistics.entityCount)
+        }
+
+        then:
+        count == 25
+        names == (1..50).findAll { it % 2 }.collect { "name${it}" as String }
+        maxEntities <= clearEvery
+
+        where:
+        name      | clearEvery
+        'default' | 500
+        'people'  | 10
+    }
+
+    void 'Execute statements asynchronously on #name SessionFactory'() {
+        when:
+        List<CompletableFuture<Boolean>> futures = (1..10).collect { i ->
+            hibernate3Handler.withHbm3SessionAsync(name) { String sessionFactoryName, Session session ->
+                session.save(new Person(name: "name${i}", lastname: "lastname${i}"))
+                Thread.currentThread().name.startsWith("hibernate3-${sessionFactoryName}-")
+            }
+        }
+        futures*.get(10, TimeUnit.SECONDS)
+
+        Number count = hibernate3Handler.withHbm3SessionAsync(name) { String sessionFactoryName, Session session ->
+            session.createQuery('select count(*) from Person').uniqueResult()
+        }.get(10, TimeUnit.SECONDS)
+
+        then:
+        futures*.get().every()
+        count == 10
+
+        where:
+        name      | _
+        'default' | _
+        'people'  | _
+    }
+
+    void 'Execute statements on several SessionFactories at once'() {
+        given:
+        hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Person(name: 'Danno', lastname: 'Ferrin'))
+        }
+
+        when:
+        Hibernate3Results<Number> results = hibernate3Handler.withHbm3Sessions(['default', 'people']) { String sessionFactoryName, Session session ->
+            session.createQuery('select count(*) from Person').uniqueResult()
+        }
+
+        then:
+        !results.hasFailures()
+        results.results == [default: 0L, people: 1L]
+    }
+
+    void 'Failed and slow SessionFactories are reported separately'() {
+        given:
+        CountDownLatch release = new CountDownLatch(1)
+        ['default', 'people', 'internal'].each { String name ->
+            hibernate3Handler.withHbm3Session(name) { String sessionFactoryName, Session session -> }
+        }
+
+        when:
+        Hibernate3Results<String> results = hibernate3Handler.withHbm3Sessions(['default', 'people', 'internal'], 500) { String sessionFactoryName, Session session ->
+            if (sessionFactoryName == 'people') {
+                throw new IllegalStateException('boom')
+            } else if (sessionFactoryName == 'internal') {
+                // held until the results are in, however long the deadline
+                release.await(10, TimeUnit.SECONDS)
+            }
+            sessionFactoryName
+        }
+        release.countDown()
+
+        then:
+        results.results == [default: 'default']
+        results.failures.keySet() == ['people', 'internal'] as Set
+        results.failures.people.cause instanceof IllegalStateException
+        results.failures.internal.cause instanceof TimeoutException
+    }
+
+    void 'Callbacks that time out are rolled back instead of committed'() {
+        given:
+        CountDownLatch release = new CountDownLatch(1)
+        hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session -> }
+        RecordingSessionFactory sessionFactory = RecordingSessionFactory.unwrap(hibernate3Storage.get('people'))
+
+        when:
+        Hibernate3Results<Boolean> results = hibernate3Handler.withHbm3Sessions(['people'], 100) { String sessionFactoryName, Session session ->
+            session.save(new Person(name: 'Danno', lastname: 'Ferrin'))
+            release.await(10, TimeUnit.SECONDS)
+        }
+        release.countDown()
+        long deadline = System.currentTimeMillis() + 10000
+        while (sessionFactory.sessionCount > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+
+        then:
+        results.failures.people.cause instanceof TimeoutException
+        sessionFactory.sessionCount == 0
+        sessionFactory.metrics.rolledBackTransactionCount == 1
+        hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session ->
+            session.createQuery('select count(*) from Person').uniqueResult()
+        } == 0L
+    }
+
+    void 'Closing a SessionFactory waits for sessions in flight'() {
+        given:
+        CountDownLatch opened = new CountDownLatch(1)
+        hibernate3Handler.withHbm3Session('internal') { String sessionFactoryName, Session session -> }
+        SessionFactory sessionFactory = hibernate3Storage.get('internal')
+        CompletableFuture<Boolean> write = hibernate3Handler.withHbm3SessionAsync('internal') { String sessionFactoryName, Session session ->
+            opened.countDown()
+            Thread.sleep(500)
+            session.save(new Person(name: 'Danno', lastname: 'Ferrin'))
+            true
+        }
+
+        when:
+        opened.await(10, TimeUnit.SECONDS)
+        hibernate3Handler.closeHbm3Session('internal')
+
+        then:
+        write.get(10, TimeUnit.SECONDS)
+        RecordingSessionFactory.unwrap(sessionFactory).draining
+        RecordingSessionFactory.unwrap(sessionFactory).sessionCount == 0
+        sessionFactory.closed
+    }
+
+    void 'Sessions outliving the drain are reported with the thread that opened them'() {
+        given:
+        hibernate3Handler.withHbm3Session('internal') { String sessionFactoryName, Session session -> }
+        RecordingSessionFactory sessionFactory = RecordingSessionFactory.unwrap(hibernate3Storage.get('internal'))
+        Session session = sessionFactory.openSession()
+
+        when:
+        sessionFactory.drain()
+        int left = sessionFactory.awaitSessions(50, TimeUnit.MILLISECONDS)
+
+        then:
+        left == 1
+        sessionFactory.openSessions*.threadName == [Thread.currentThread().name]
+
+        when:
+        sessionFactory.openSession()
+
+        then:
+        thrown(HibernateException)
+        sessionFactory.sessionCount == 1
+
+        cleanup:
+        session.close()
+    }
+
+    void 'Open sessions are only tracked when trackOpenSessions is enabled'() {
+        given:
+        hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session -> }
+        RecordingSessionFactory sessionFactory = RecordingSessionFactory.unwrap(hibernate3Storage.get('people'))
+
+        when:
+        Session session = sessionFactory.openSession()
+
+        then:
+        sessionFactory.sessionCount == 1
+        sessionFactory.openSessions.empty
+
+        cleanup:
+        session?.close()
+    }
+
+    void 'SessionFactories needed by asynchronous callbacks are built on the executor of the plugin'() {
+        when:
+        String threadName = hibernate3Handler.withHbm3SessionAsync('internal') { String sessionFactoryName, Session session ->
+            Thread.currentThread().name
+        }.get(10, TimeUnit.SECONDS)
+
+        then:
+        bootstrap.initThreadName.startsWith('hibernate3-async-')
+        threadName.startsWith('hibernate3-internal-')
+    }
+
+    void 'Asynchronous failures complete the future exceptionally'() {
+        when:
+        hibernate3Handler.withHbm3SessionAsync { String sessionFactoryName, Session session ->
+            session.save(new Person())
+        }.get(10, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof RuntimeHibernate3Exception
+    }
+
+    void 'Work of a callback that fails is rolled back'() {
+        when:
+        hibernate3Handler.withHbm3Session('internal') { String sessionFactoryName, Session session ->
+            session.save(new Person(name: 'Danno', lastname: 'Ferrin'))
+            session.flush()
+            throw new IllegalStateException('boom')
+        }
+
+        then:
+        thrown(RuntimeHibernate3Exception)
+        hibernate3Handler.withHbm3Session('internal') { String sessionFactoryName, Session session ->
+            session.createQuery('select count(*) from Person').uniqueResult()
+        } == 0L
+    }
+
+    void 'Pool overflow policy #policy is #outcome'() {
+        when:
+        SessionLimiter limiter = hibernate3Factory.createSessionLimiter('people', [poolOverflow: policy, maxSessions: 2], Stub(SessionFactory))
+
+        then:
+        limiter?.policy?.name() == expected
+
+        where:
+        policy   | expected | outcome
+        'Block'  | 'BLOCK'  | 'accepted regardless of case'
+        'ignore' | null     | 'disabling the limiter'
+    }
+
+    void 'Misspelled pool overflow policies name the SessionFactory and the setting'() {
+        when:
+        hibernate3Factory.createSessionLimiter('people', [poolOverflow: 'blok', maxSessions: 2], Stub(SessionFactory))
+
+        then:
+        IllegalArgumentException e = thrown()
+        e.message == "Invalid value for 'poolOverflow' on sessionFactory 'people': blok. Must be one of [warn, block, ignore]"
+    }
+
+    void 'Session and transaction metrics are recorded per SessionFactory'() {
+        given:
+        hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session -> }
+        hibernate3Handler.withHbm3ReadOnlySession('people') { String sessionFactoryName, Session session -> }
+        SessionMetrics metrics = RecordingSessionFactory.unwrap(hibernate3Storage.get('people')).metrics
+
+        when:
+        hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session ->
+            throw new IllegalStateException('boom')
+        }
+
+        then:
+        thrown(RuntimeHibernate3Exception)
+        metrics.openedSessionCount == 3
+        metrics.closedSessionCount == 3
+        metrics.committedTransactionCount == 1
+        metrics.rolledBackTransactionCount == 2
+        metrics.failedCallbackCount == 1
+        metrics.sessionDurationHistogram.values().sum() == 3
+    }
+
+    void 'Entities and queries are served from the second-level cache'() {
+        given:
+        hibernate3Handler.withHbm3Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+        Statistics statistics = hibernate3Storage.get('people').statistics
+
+        when:
+        2.times {
+            hibernate3Handler.withHbm3ReadOnlySession('people') { String sessionFactoryName, Session session ->
+                session.get(Person, 1)
+                session.createQuery('from Person').setCacheable(true).list()
+            }
+        }
+
+        then:
+        statistics.secondLevelCacheHitCount >= 2
+        statistics.queryCacheHitCount == 1
+    }
+
     void 'A runtime exception is thrown within session handling'() {
         when:
         hibernate3Handler.withHbm3Session { String sessionFactoryName, Session session ->
@@ -19,14 +19,23 @@ package griffon.plugins.hibernate3
 
 import griffon.annotations.core.Nonnull
 import org.hibernate.Session
+import org.hibernate.SessionFactory
 
 class TestHibernate3Bootstrap implements Hibernate3Bootstrap {
     boolean initWitness
     boolean destroyWitness
+    RuntimeException initFailure
+    SessionFactory initSessionFactory
+    String initThreadName
 
     @Override
     void init(@Nonnull String sessionFactoryName, @Nonnull Session session) {
         initWitness = true
+        initSessionFactory = session.sessionFactory
+        initThreadName = Thread.currentThread().name
+        if (initFailure) {
+            throw initFailure
+        }
     }
 
     @Override
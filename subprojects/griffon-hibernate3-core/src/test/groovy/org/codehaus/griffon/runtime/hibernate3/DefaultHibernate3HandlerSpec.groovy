@@ -0,0 +1,243 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3
+
+import griffon.exceptions.GriffonException
+import griffon.plugins.hibernate3.Hibernate3Factory
+import griffon.plugins.hibernate3.Hibernate3Storage
+import griffon.plugins.hibernate3.exceptions.RuntimeHibernate3Exception
+import org.hibernate.Query
+import org.hibernate.ScrollableResults
+import org.hibernate.Session
+import org.hibernate.SessionFactory
+import org.hibernate.Transaction
+import org.hibernate.exception.JDBCConnectionException
+import spock.lang.Specification
+
+import java.sql.SQLException
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class DefaultHibernate3HandlerSpec extends Specification {
+    private static final int THREADS = 32
+
+    void 'Concurrent first callers share a single SessionFactory'() {
+        given:
+        AtomicInteger creations = new AtomicInteger()
+        SessionFactory sessionFactory = stubSessionFactory()
+        Hibernate3Factory factory = Stub(Hibernate3Factory) {
+            create(_) >> {
+                creations.incrementAndGet()
+                Thread.sleep(100)
+                sessionFactory
+            }
+        }
+        Hibernate3Storage storage = new DefaultHibernate3Storage()
+        DefaultHibernate3Handler handler = new DefaultHibernate3Handler(factory, storage)
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS)
+        CountDownLatch start = new CountDownLatch(1)
+
+        when:
+        List<Future<Boolean>> futures = (1..THREADS).collect {
+            executor.submit({
+                start.await()
+                handler.withHbm3Session { String sessionFactoryName, Session session -> true }
+            } as Callable<Boolean>)
+        }
+        start.countDown()
+        List<Boolean> results = futures*.get(10, TimeUnit.SECONDS)
+
+        then:
+        creations.get() == 1
+        results.every()
+        storage.get('default').is(sessionFactory)
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    void 'A failed creation is not cached and may be retried'() {
+        given:
+        AtomicInteger attempts = new AtomicInteger()
+        SessionFactory sessionFactory = stubSessionFactory()
+        Hibernate3Factory factory = Stub(Hibernate3Factory) {
+            create(_) >> {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException('boom')
+                }
+                sessionFactory
+            }
+        }
+        DefaultHibernate3Handler handler = new DefaultHibernate3Handler(factory, new DefaultHibernate3Storage())
+
+        when:
+        handler.withHbm3Session { String sessionFactoryName, Session session -> true }
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        boolean result = handler.withHbm3Session { String sessionFactoryName, Session session -> true }
+
+        then:
+        result
+        attempts.get() == 2
+    }
+
+    void 'SessionFactories are not built once shutdown has begun'() {
+        given:
+        Hibernate3Factory factory = Mock(Hibernate3Factory)
+        DefaultHibernate3Handler handler = new DefaultHibernate3Handler(factory, new DefaultHibernate3Storage())
+        handler.shutdown()
+
+        when:
+        handler.withHbm3Session { String sessionFactoryName, Session session -> true }
+
+        then:
+        thrown(GriffonException)
+        0 * factory.create(_)
+    }
+
+    void 'SessionFactories finishing their build after shutdown began are closed'() {
+        given:
+        SessionFactory sessionFactory = stubSessionFactory()
+        CountDownLatch building = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        Hibernate3Factory factory = Mock(Hibernate3Factory) {
+            create('default') >> {
+                building.countDown()
+                release.await(10, TimeUnit.SECONDS)
+                sessionFactory
+            }
+        }
+        Hibernate3Storage storage = new DefaultHibernate3Storage()
+        DefaultHibernate3Handler handler = new DefaultHibernate3Handler(factory, storage)
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+
+        when:
+        Future<Boolean> future = executor.submit({
+            handler.withHbm3Session { String sessionFactoryName, Session session -> true }
+        } as Callable<Boolean>)
+        building.await(10, TimeUnit.SECONDS)
+        handler.shutdown()
+        release.countDown()
+        future.get(10, TimeUnit.SECONDS)
+
+        then:
+        Exception e = thrown()
+        e.cause instanceof GriffonException
+        1 * factory.destroy('default', sessionFactory)
+        storage.get('default') == null
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    void 'Streams failing part way through on a replica are not replayed on the primary'() {
+        given:
+        SessionFactory primary = Mock(SessionFactory)
+        SessionFactory replica = Stub(SessionFactory) {
+            openSession() >> streamingSession([1, 2, 3], 2)
+        }
+        ReplicaRouter router = new ReplicaRouter('default', [replica: new RecordingSessionFactory(replica)], ReplicaRouter.Balancing.ROUND_ROBIN)
+        DefaultHibernate3Handler handler = replicatedHandler(primary, router)
+        List<Integer> rows = []
+
+        when:
+        handler.streamHbm3('from Item', [:]) { String sessionFactoryName, Session session, Integer row -> rows << row }
+
+        then:
+        thrown(RuntimeHibernate3Exception)
+        0 * primary.openSession()
+        rows == [1, 2]
+        router.healthyReplicas.empty
+    }
+
+    void 'Streams fall back to the primary when the replica cannot be reached'() {
+        given:
+        SessionFactory primary = Stub(SessionFactory) {
+            openSession() >> streamingSession([1, 2, 3])
+        }
+        org.hibernate.classic.Session unreachable = Stub(org.hibernate.classic.Session) {
+            beginTransaction() >> { throw new JDBCConnectionException('down', new SQLException('down', '08001')) }
+        }
+        SessionFactory replica = Stub(SessionFactory) {
+            openSession() >> unreachable
+        }
+        ReplicaRouter router = new ReplicaRouter('default', [replica: new RecordingSessionFactory(replica)], ReplicaRouter.Balancing.ROUND_ROBIN)
+        DefaultHibernate3Handler handler = replicatedHandler(primary, router)
+        List<Integer> rows = []
+
+        when:
+        long count = handler.streamHbm3('from Item', [:]) { String sessionFactoryName, Session session, Integer row -> rows << row }
+
+        then:
+        count == 3
+        rows == [1, 2, 3]
+        router.healthyReplicas.empty
+    }
+
+    private DefaultHibernate3Handler replicatedHandler(SessionFactory primary, ReplicaRouter router) {
+        Hibernate3Factory factory = Stub(Hibernate3Factory) {
+            getConfigurationFor(_) >> [:]
+        }
+        Hibernate3Storage storage = new DefaultHibernate3Storage()
+        storage.set('default', RecordingSessionFactory.builder(primary).replicaRouter(router).build())
+        new DefaultHibernate3Handler(factory, storage)
+    }
+
+    private org.hibernate.classic.Session streamingSession(List<Integer> values, int failAfter = -1) {
+        int position = 0
+        ScrollableResults results = Stub(ScrollableResults) {
+            next() >> {
+                if (position == failAfter) {
+                    throw new JDBCConnectionException('connection lost', new SQLException('connection lost', '08S01'))
+                }
+                position++ < values.size()
+            }
+            get() >> { [values[position - 1]] as Object[] }
+        }
+        Query query
+        query = Stub(Query) {
+            setFetchSize(_) >> { query }
+            setReadOnly(_) >> { query }
+            setCacheMode(_) >> { query }
+            scroll(_) >> results
+        }
+        Stub(org.hibernate.classic.Session) {
+            createQuery(_) >> query
+            getTransaction() >> Stub(Transaction)
+        }
+    }
+
+    private SessionFactory stubSessionFactory() {
+        Transaction transaction = Stub(Transaction)
+        org.hibernate.classic.Session session = Stub(org.hibernate.classic.Session) {
+            getTransaction() >> transaction
+        }
+        Stub(SessionFactory) {
+            openSession() >> session
+        }
+    }
+}
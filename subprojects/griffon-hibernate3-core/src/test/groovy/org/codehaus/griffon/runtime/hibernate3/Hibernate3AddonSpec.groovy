@@ -0,0 +1,215 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3
+
+import griffon.core.Configuration
+import griffon.plugins.hibernate3.Hibernate3Callback
+import griffon.plugins.hibernate3.Hibernate3Factory
+import griffon.plugins.hibernate3.Hibernate3Handler
+import griffon.plugins.hibernate3.Hibernate3Storage
+import org.hibernate.Query
+import org.hibernate.Session
+import spock.lang.Specification
+import spock.lang.Unroll
+import spock.util.concurrent.BlockingVariable
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+@Unroll
+class Hibernate3AddonSpec extends Specification {
+    Map<String, Map<String, Object>> sessionFactories = [:]
+    boolean parallelStartup
+
+    Hibernate3Handler hibernate3Handler = Mock(Hibernate3Handler)
+
+    Hibernate3Addon addon = new Hibernate3Addon()
+
+    void setup() {
+        addon.@hibernate3Handler = hibernate3Handler
+        addon.@hibernate3Storage = Stub(Hibernate3Storage)
+        addon.@hibernate3Factory = Stub(Hibernate3Factory) {
+            getSessionFactoryNames() >> { sessionFactories.keySet() }
+            getConfigurationFor(_) >> { String name -> sessionFactories[name] }
+        }
+        addon.@configuration = Stub(Configuration) {
+            getAsBoolean('parallelStartup', _) >> { parallelStartup }
+            getAsInt(_, _) >> { String key, int defaultValue -> key == 'startupThreads' ? 4 : defaultValue }
+            getAsLong(_, _) >> { String key, long defaultValue -> defaultValue }
+        }
+    }
+
+    void cleanup() {
+        addon.onShutdown(null)
+    }
+
+    void 'SessionFactories started in parallel are built at the same time'() {
+        given:
+        parallelStartup = true
+        sessionFactories = [people: [warmup: 'startup'], orders: [warmup: 'startup'], reports: [warmup: 'startup']]
+        CountDownLatch started = new CountDownLatch(3)
+        List<String> threadNames = new CopyOnWriteArrayList<>()
+
+        when:
+        addon.handleStartupStartEvent(null)
+
+        then:
+        3 * hibernate3Handler.withHbm3Session(_, _) >> {
+            started.countDown()
+            // only returns early if all SessionFactories are being built at once
+            assert started.await(10, TimeUnit.SECONDS)
+            threadNames << Thread.currentThread().name
+            null
+        }
+        threadNames.size() == 3
+        threadNames.every { it.startsWith('hibernate3-startup-') }
+    }
+
+    void 'Failures of SessionFactories started in parallel are reported together'() {
+        given:
+        parallelStartup = true
+        sessionFactories = [people: [warmup: 'startup'], orders: [warmup: 'startup'], reports: [warmup: 'startup']]
+        hibernate3Handler.withHbm3Session(_, _) >> { String name, Hibernate3Callback callback ->
+            if (name != 'orders') {
+                throw new IllegalStateException(name)
+            }
+            null
+        }
+
+        when:
+        addon.handleStartupStartEvent(null)
+
+        then:
+        IllegalStateException e = thrown()
+        e.message == 'people'
+        e.suppressed*.message == ['reports']
+    }
+
+    void 'SessionFactories are started one after the other unless parallelStartup is set'() {
+        given:
+        sessionFactories = [people: [warmup: 'startup'], orders: [connect_on_startup: true], reports: [:]]
+        List<String> threadNames = []
+
+        when:
+        addon.handleStartupStartEvent(null)
+
+        then:
+        1 * hibernate3Handler.withHbm3Session('people', _) >> { threadNames << Thread.currentThread().name; null }
+        1 * hibernate3Handler.withHbm3Session('orders', _) >> { threadNames << Thread.currentThread().name; null }
+        0 * hibernate3Handler.withHbm3Session('reports', _)
+        threadNames == [Thread.currentThread().name] * 2
+    }
+
+    void 'SessionFactories with background warmup do not hold up startup'() {
+        given:
+        sessionFactories = [people: [warmup: 'background']]
+        CountDownLatch release = new CountDownLatch(1)
+        BlockingVariable<String> warmedUpOn = new BlockingVariable<>(10, TimeUnit.SECONDS)
+        hibernate3Handler.withHbm3Session('people', _) >> {
+            release.await(10, TimeUnit.SECONDS)
+            warmedUpOn.set(Thread.currentThread().name)
+            null
+        }
+
+        when:
+        addon.handleStartupStartEvent(null)
+
+        then:
+        // the event returns while the SessionFactory is still being built
+        release.count == 1
+
+        when:
+        release.countDown()
+
+        then:
+        warmedUpOn.get().startsWith('hibernate3-warmup-')
+    }
+
+    void 'Warmup queries are run in a read-only session with #warmup warmup'() {
+        given:
+        sessionFactories = [people: [warmup: warmup, warmupQueries: ['from Person', 'from Person p where p.id = 1']]]
+        List<String> queries = new CopyOnWriteArrayList<>()
+        List<Integer> maxResults = new CopyOnWriteArrayList<>()
+        BlockingVariable<Boolean> done = new BlockingVariable<>(10, TimeUnit.SECONDS)
+        Query query
+        query = Stub(Query) {
+            setMaxResults(_) >> { int max -> maxResults << max; query }
+        }
+        Session session = Stub(Session) {
+            createQuery(_) >> { String hql -> queries << hql; query }
+        }
+        hibernate3Handler.withHbm3ReadOnlySession('people', _) >> { String name, Hibernate3Callback callback ->
+            callback.handle(name, session)
+            done.set(true)
+            null
+        }
+
+        when:
+        addon.handleStartupStartEvent(null)
+
+        then:
+        done.get()
+        queries == ['from Person', 'from Person p where p.id = 1']
+        maxResults == [1, 1]
+
+        where:
+        warmup << ['startup', 'background']
+    }
+
+    void 'Shutdown waits for SessionFactories still warming up'() {
+        given:
+        sessionFactories = [people: [warmup: 'background']]
+        CountDownLatch building = new CountDownLatch(1)
+        AtomicBoolean built = new AtomicBoolean()
+        hibernate3Handler.withHbm3Session('people', _) >> {
+            building.countDown()
+            // like a SessionFactory being built, does not give up when interrupted
+            long deadline = System.currentTimeMillis() + 200
+            while (System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(10)
+                } catch (InterruptedException ignored) {
+                }
+            }
+            built.set(true)
+            null
+        }
+        addon.handleStartupStartEvent(null)
+        building.await(10, TimeUnit.SECONDS)
+
+        when:
+        addon.onShutdown(null)
+
+        then:
+        built.get()
+    }
+
+    void 'Unknown warmup values are rejected'() {
+        given:
+        sessionFactories = [people: [warmup: 'eager']]
+
+        when:
+        addon.handleStartupStartEvent(null)
+
+        then:
+        IllegalArgumentException e = thrown()
+        e.message.contains("'warmup' on sessionFactory 'people': eager")
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3
+
+import griffon.plugins.hibernate3.exceptions.RuntimeHibernate3Exception
+import org.hibernate.classic.Session
+import org.hibernate.connection.ConnectionProvider
+import org.hibernate.engine.SessionFactoryImplementor
+import org.hibernate.exception.JDBCConnectionException
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.SQLException
+
+class ReplicaRouterSpec extends Specification {
+    void 'Round robin balancing visits every replica in turn'() {
+        given:
+        Map<String, RecordingSessionFactory> replicas = replicas('r1', 'r2', 'r3')
+        ReplicaRouter router = new ReplicaRouter('default', replicas, ReplicaRouter.Balancing.ROUND_ROBIN)
+
+        expect:
+        (1..6).collect { router.select() } == [replicas.r1, replicas.r2, replicas.r3, replicas.r1, replicas.r2, replicas.r3]
+    }
+
+    void 'Least sessions balancing picks the replica with the fewest open sessions'() {
+        given:
+        Map<String, RecordingSessionFactory> replicas = replicas('r1', 'r2', 'r3')
+        ReplicaRouter router = new ReplicaRouter('default', replicas, ReplicaRouter.Balancing.LEAST_SESSIONS)
+        List<Session> sessions = [replicas.r1, replicas.r1, replicas.r3]*.openSession()
+
+        expect:
+        router.select().is(replicas.r2)
+
+        when:
+        sessions[0..1]*.close()
+
+        then:
+        router.select().is(replicas.r1)
+
+        cleanup:
+        sessions*.close()
+    }
+
+    void 'Replicas failing with connection errors are taken out of rotation'() {
+        given:
+        Map<String, RecordingSessionFactory> replicas = replicas('r1', 'r2')
+        ReplicaRouter router = new ReplicaRouter('default', replicas, ReplicaRouter.Balancing.ROUND_ROBIN)
+
+        when:
+        boolean queryFailure = router.failed(replicas.r1, new RuntimeHibernate3Exception('default', new IllegalStateException()))
+        boolean connectionFailure = router.failed(replicas.r2, new RuntimeHibernate3Exception('default', new JDBCConnectionException('down', new SQLException('down', '08001'))))
+
+        then:
+        !queryFailure
+        connectionFailure
+        router.healthyReplicas == ['r1']
+        (1..3).collect { router.select() } == [replicas.r1, replicas.r1, replicas.r1]
+
+        when:
+        router.failed(replicas.r1, new SQLException('down', '08S01'))
+
+        then:
+        router.select() == null
+    }
+
+    void 'Health checks bring reachable replicas back into rotation'() {
+        given:
+        boolean reachable = false
+        Connection connection = Stub(Connection) {
+            isValid(_) >> { reachable }
+        }
+        ConnectionProvider connectionProvider = Stub(ConnectionProvider) {
+            getConnection() >> connection
+        }
+        RecordingSessionFactory replica = new RecordingSessionFactory(Stub(SessionFactoryImplementor) {
+            getConnectionProvider() >> connectionProvider
+        })
+        ReplicaRouter router = new ReplicaRouter('default', [r1: replica], ReplicaRouter.Balancing.ROUND_ROBIN)
+
+        when:
+        router.checkHealth()
+
+        then:
+        router.select() == null
+
+        when:
+        reachable = true
+        router.checkHealth()
+
+        then:
+        router.select().is(replica)
+    }
+
+    private Map<String, RecordingSessionFactory> replicas(String... names) {
+        names.collectEntries { String name ->
+            [(name): new RecordingSessionFactory(Stub(SessionFactoryImplementor) {
+                openSession() >> { Stub(Session) }
+            })]
+        }
+    }
+}
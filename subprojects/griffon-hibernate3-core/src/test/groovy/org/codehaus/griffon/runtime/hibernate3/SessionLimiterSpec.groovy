@@ -0,0 +1,107 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3
+
+import org.hibernate.HibernateException
+import org.hibernate.SessionFactory
+import org.hibernate.StatelessSession
+import org.hibernate.classic.Session
+import spock.lang.Specification
+
+class SessionLimiterSpec extends Specification {
+    void 'Blocking policy times out once all sessions are taken'() {
+        given:
+        SessionLimiter limiter = new SessionLimiter('default', 2, SessionLimiter.Policy.BLOCK, 50)
+        limiter.acquire()
+        limiter.acquire()
+
+        when:
+        limiter.acquire()
+
+        then:
+        thrown(HibernateException)
+        limiter.overflowCount == 1
+
+        when:
+        limiter.release()
+        limiter.acquire()
+
+        then:
+        noExceptionThrown()
+    }
+
+    void 'Warning policy counts sessions opened beyond the limit'() {
+        given:
+        SessionLimiter limiter = new SessionLimiter('default', 2, SessionLimiter.Policy.WARN, 0)
+
+        when:
+        limiter.acquire()
+        (1..4).each { limiter.opened(it) }
+
+        then:
+        limiter.overflowCount == 2
+    }
+
+    void 'Sessions that fail to close still give back their permit'() {
+        given:
+        SessionFactory delegate = Stub(SessionFactory) {
+            openSession() >> Stub(Session) {
+                close() >> { throw new HibernateException('boom') }
+            }
+        }
+        SessionLimiter limiter = new SessionLimiter('default', 1, SessionLimiter.Policy.BLOCK, 50)
+        RecordingSessionFactory sessionFactory = RecordingSessionFactory.builder(delegate).sessionLimiter(limiter).build()
+
+        when:
+        sessionFactory.openSession().close()
+
+        then:
+        thrown(HibernateException)
+        sessionFactory.sessionCount == 0
+
+        when:
+        sessionFactory.openSession()
+
+        then:
+        noExceptionThrown()
+        limiter.overflowCount == 0
+    }
+
+    void 'Sessions closed twice give back their permit only once'() {
+        given:
+        SessionFactory delegate = Stub(SessionFactory) {
+            openSession() >> Stub(Session)
+            openStatelessSession() >> Stub(StatelessSession)
+        }
+        SessionLimiter limiter = new SessionLimiter('default', 2, SessionLimiter.Policy.BLOCK, 50)
+        RecordingSessionFactory sessionFactory = RecordingSessionFactory.builder(delegate).sessionLimiter(limiter).build()
+        Session session = sessionFactory.openSession()
+        StatelessSession statelessSession = sessionFactory.openStatelessSession()
+
+        when:
+        2.times {
+            session.close()
+            statelessSession.close()
+        }
+
+        then:
+        sessionFactory.sessionCount == 0
+        limiter.@permits.availablePermits() == 2
+        sessionFactory.metrics.closedSessionCount == 2
+    }
+}
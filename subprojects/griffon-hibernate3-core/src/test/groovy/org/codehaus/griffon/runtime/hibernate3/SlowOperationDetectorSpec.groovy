@@ -0,0 +1,75 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3
+
+import org.hibernate.Query
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class SlowOperationDetectorSpec extends Specification {
+    void 'Sessions open longer than the threshold are reported'() {
+        given:
+        List reports = []
+        SlowOperationDetector detector = new SlowOperationDetector('default', 10, 0)
+        detector.addListener({ kind, name, statement, elapsed, stack -> reports << [kind, name, elapsed] } as SlowOperationDetector.Listener)
+
+        when:
+        detector.sessionClosed(TimeUnit.MILLISECONDS.toNanos(50))
+        detector.sessionClosed(TimeUnit.MILLISECONDS.toNanos(5))
+
+        then:
+        reports.size() == 1
+        reports[0][0] == SlowOperationDetector.Kind.SESSION
+        reports[0][1] == 'default'
+        reports[0][2] >= 50
+    }
+
+    void 'Slow query executions are reported with their query string'() {
+        given:
+        List reports = []
+        SlowOperationDetector detector = new SlowOperationDetector('people', 0, 10)
+        detector.addListener({ kind, name, statement, elapsed, stack -> reports << [kind, statement, stack] } as SlowOperationDetector.Listener)
+        Query query = Stub(Query)
+        query.getQueryString() >> 'from Person'
+        query.setMaxResults(_) >> query
+        query.list() >> {
+            Thread.sleep(50)
+            []
+        }
+
+        when:
+        Query timed = detector.timed(query, Query)
+        timed.setMaxResults(10).list()
+
+        then:
+        reports.size() == 1
+        reports[0][0] == SlowOperationDetector.Kind.QUERY
+        reports[0][1] == 'from Person'
+        reports[0][2].length > 0
+    }
+
+    void 'Queries are not wrapped when query timing is disabled'() {
+        given:
+        SlowOperationDetector detector = new SlowOperationDetector('default', 10, 0)
+        Query query = Stub(Query)
+
+        expect:
+        detector.timed(query, Query).is(query)
+    }
+}
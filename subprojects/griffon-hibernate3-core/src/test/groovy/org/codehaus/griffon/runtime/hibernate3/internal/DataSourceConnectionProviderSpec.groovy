@@ -0,0 +1,94 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal
+
+import org.h2.jdbcx.JdbcDataSource
+import org.hibernate.SessionFactory
+import org.hibernate.cfg.Configuration
+import org.hibernate.cfg.Environment
+import org.hibernate.engine.SessionFactoryImplementor
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+class DataSourceConnectionProviderSpec extends Specification {
+    void 'Each bind of the same DataSource name gets its own key'() {
+        given:
+        JdbcDataSource first = new JdbcDataSource(URL: 'jdbc:h2:mem:first', user: 'sa', password: '')
+        JdbcDataSource second = new JdbcDataSource(URL: 'jdbc:h2:mem:second', user: 'sa', password: '')
+
+        when:
+        String firstKey = DataSourceConnectionProvider.bind('shared', first)
+        String secondKey = DataSourceConnectionProvider.bind('shared', second)
+        DataSourceConnectionProvider.unbind(firstKey)
+
+        then:
+        firstKey != secondKey
+        provider(secondKey).dataSource.is(second)
+
+        cleanup:
+        DataSourceConnectionProvider.unbind(secondKey)
+    }
+
+    void 'Concurrent builds sharing a DataSource name each get their own DataSource'() {
+        given:
+        int builds = 8
+        List<JdbcDataSource> dataSources = (1..builds).collect {
+            new JdbcDataSource(URL: "jdbc:h2:mem:concurrent-${it}", user: 'sa', password: '')
+        }
+        CountDownLatch start = new CountDownLatch(1)
+        ExecutorService executor = Executors.newFixedThreadPool(builds)
+
+        when:
+        List<Future<SessionFactory>> futures = dataSources.collect { JdbcDataSource dataSource ->
+            executor.submit({
+                start.await()
+                Configuration configuration = new Configuration()
+                    .setProperty(Environment.DIALECT, 'org.hibernate.dialect.H2Dialect')
+                    .setProperty(Environment.CONNECTION_PROVIDER, DataSourceConnectionProvider.name)
+                    .setProperty(DataSourceConnectionProvider.DATASOURCE_NAME, DataSourceConnectionProvider.bind('shared', dataSource))
+                try {
+                    configuration.buildSessionFactory()
+                } finally {
+                    DataSourceConnectionProvider.unbind(configuration)
+                }
+            } as Callable<SessionFactory>)
+        }
+        start.countDown()
+        List<SessionFactory> sessionFactories = futures*.get()
+
+        then:
+        sessionFactories.collect { ((SessionFactoryImplementor) it).connectionProvider.dataSource } == dataSources
+
+        cleanup:
+        sessionFactories*.close()
+        executor.shutdownNow()
+    }
+
+    private static DataSourceConnectionProvider provider(String key) {
+        Properties properties = new Properties()
+        properties.setProperty(DataSourceConnectionProvider.DATASOURCE_NAME, key)
+        DataSourceConnectionProvider provider = new DataSourceConnectionProvider()
+        provider.configure(properties)
+        provider
+    }
+}
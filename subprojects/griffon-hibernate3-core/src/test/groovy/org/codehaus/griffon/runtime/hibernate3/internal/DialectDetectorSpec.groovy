@@ -0,0 +1,142 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal
+
+import griffon.core.GriffonApplication
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.sql.DataSource
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermissions
+import java.sql.Connection
+import java.sql.DatabaseMetaData
+
+@Unroll
+class DialectDetectorSpec extends Specification {
+    private static final String H2_DIALECT = 'org.hibernate.dialect.H2Dialect'
+    private static final String KEY = DialectDetector.dataSourceKey('jdbc:h2:mem:dialects', 'org.h2.Driver')
+
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    GriffonApplication application = Stub(GriffonApplication) {
+        getConfiguration() >> Stub(griffon.core.Configuration) {
+            asProperties() >> new Properties()
+        }
+    }
+
+    void cleanup() {
+        DialectDetector.DIALECTS.clear()
+    }
+
+    void 'Cached dialects are not detected again'() {
+        given:
+        DatabaseMetaData first = metaData('H2', '1.4.200', '1.4.200')
+        DatabaseMetaData second = metaData('H2', '1.4.200', '1.4.200')
+
+        when:
+        String detected = new DialectDetector(application, dataSource(first), KEY, null).dialect
+        String cached = new DialectDetector(application, dataSource(second), KEY, null).dialect
+
+        then:
+        1 * first.databaseMajorVersion >> 1
+        0 * second.databaseMajorVersion
+        detected == H2_DIALECT
+        cached == H2_DIALECT
+    }
+
+    void 'Dialects are detected again after #change'() {
+        given:
+        new DialectDetector(application, dataSource(metaData('H2', '1.4.199', '1.4.199')), KEY, null).dialect
+        DatabaseMetaData current = metaData(product, version, driverVersion)
+
+        when:
+        String dialect = new DialectDetector(application, dataSource(current), KEY, null).dialect
+
+        then:
+        1 * current.databaseMajorVersion >> 2
+        dialect == expected
+
+        where:
+        change                          | product                | version   | driverVersion || expected
+        'upgrading the database'        | 'H2'                   | '1.4.200' | '1.4.199'     || H2_DIALECT
+        'upgrading the driver'          | 'H2'                   | '1.4.199' | '1.4.200'     || H2_DIALECT
+        'switching to another database' | 'HSQL Database Engine' | '2.5.0'   | '1.4.199'     || 'org.hibernate.dialect.HSQLDialect'
+    }
+
+    void 'Cached dialects survive restarts in the cache file'() {
+        given:
+        File cacheFile = new File(temporaryFolder.root, 'cache/dialects.properties')
+        DatabaseMetaData restarted = metaData('H2', '1.4.200', '1.4.200')
+
+        when:
+        new DialectDetector(application, dataSource(metaData('H2', '1.4.200', '1.4.200')), KEY, cacheFile).dialect
+        DialectDetector.DIALECTS.clear()
+        String cached = new DialectDetector(application, dataSource(restarted), KEY, cacheFile).dialect
+
+        then:
+        0 * restarted.databaseMajorVersion
+        cached == H2_DIALECT
+        !cacheFile.text.contains('jdbc:h2')
+    }
+
+    void 'DataSources without a configured URL are not cached'() {
+        expect:
+        DialectDetector.dataSourceKey(null, 'org.h2.Driver') == null
+
+        when:
+        new DialectDetector(application, dataSource(metaData('H2', '1.4.200', '1.4.200')), null, null).dialect
+
+        then:
+        DialectDetector.DIALECTS.isEmpty()
+    }
+
+    @IgnoreIf({ !FileSystems.default.supportedFileAttributeViews().contains('posix') })
+    void 'Cache files writable by other users are ignored'() {
+        given:
+        File cacheFile = new File(temporaryFolder.root, 'cache/dialects.properties')
+        new DialectDetector(application, dataSource(metaData('H2', '1.4.200', '1.4.200')), KEY, cacheFile).dialect
+        DialectDetector.DIALECTS.clear()
+        cacheFile.text = cacheFile.text.replace(H2_DIALECT, 'org.hibernate.dialect.HSQLDialect')
+        Files.setPosixFilePermissions(cacheFile.toPath(), PosixFilePermissions.fromString('rw-rw-rw-'))
+
+        expect:
+        new DialectDetector(application, dataSource(metaData('H2', '1.4.200', '1.4.200')), KEY, cacheFile).dialect == H2_DIALECT
+    }
+
+    private DatabaseMetaData metaData(String product, String version, String driverVersion) {
+        Mock(DatabaseMetaData) {
+            getDatabaseProductName() >> product
+            getDatabaseProductVersion() >> version
+            getDriverVersion() >> driverVersion
+        }
+    }
+
+    private DataSource dataSource(DatabaseMetaData metaData) {
+        Stub(DataSource) {
+            getConnection() >> Stub(Connection) {
+                getMetaData() >> metaData
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal
+
+import griffon.core.ApplicationClassLoader
+import griffon.core.GriffonApplication
+import org.h2.jdbcx.JdbcDataSource
+import org.hibernate.cfg.Configuration
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermissions
+
+@Unroll
+class HibernateConfigurationHelperSpec extends Specification {
+    @Rule
+    TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+    GriffonApplication application = Stub(GriffonApplication) {
+        getApplicationClassLoader() >> Stub(ApplicationClassLoader) {
+            get() >> HibernateConfigurationHelperSpec.classLoader
+        }
+    }
+
+    JdbcDataSource dataSource = new JdbcDataSource(URL: 'jdbc:h2:mem:mapping-sets', user: 'sa', password: '')
+
+    List<Configuration> configurations = []
+
+    void cleanup() {
+        configurations.each { DataSourceConnectionProvider.unbind(it) }
+    }
+
+    void 'Discovered mappings are filtered with #settings'() {
+        given:
+        Map<String, Object> config = [dialect: 'org.hibernate.dialect.H2Dialect'] + settings
+
+        when:
+        Configuration configuration = build(new HibernateConfigurationHelper(application, config, 'mappings', dataSource))
+        configuration.buildMappings()
+
+        then:
+        (configuration.getClassMapping('griffon.plugins.hibernate3.Person') != null) == mapped
+
+        where:
+        settings                                                                                  || mapped
+        [:]                                                                                       || true
+        [includeMappings: ['griffon.plugins.hibernate3.*']]                                       || true
+        [includeMappings: ['com.acme.*']]                                                         || false
+        [excludeMappings: ['griffon.plugins.hibernate3.Person']]                                  || false
+        [excludeMappings: ['griffon.plugins.*'], mappings: ['griffon.plugins.hibernate3.Person']] || true
+    }
+
+    void 'Second build is served from the configuration cache'() {
+        given:
+        File cacheDir = new File(temporaryFolder.root, 'cache')
+
+        when:
+        List<HibernateConfigurationHelper> helpers = (1..2).collect {
+            HibernateConfigurationHelper helper = cachingHelper(cacheDir)
+            build(helper)
+            helper
+        }
+
+        then:
+        !helpers[0].configurationCached
+        helpers[1].configurationCached
+        cacheDir.listFiles().findAll { it.name.endsWith('.ser') }.size() == 1
+    }
+
+    void 'Cached files holding classes outside the allow-list are discarded'() {
+        given:
+        File cacheDir = new File(temporaryFolder.root, 'cache')
+        build(cachingHelper(cacheDir))
+        File cacheFile = cacheDir.listFiles().find { it.name.endsWith('.ser') }
+        cacheFile.withObjectOutputStream { it.writeObject(new JdbcDataSource()) }
+
+        when:
+        HibernateConfigurationHelper helper = cachingHelper(cacheDir)
+        build(helper)
+
+        then:
+        !helper.configurationCached
+    }
+
+    @IgnoreIf({ !FileSystems.default.supportedFileAttributeViews().contains('posix') })
+    void 'Cached files writable by other users are ignored'() {
+        given:
+        File cacheDir = new File(temporaryFolder.root, 'cache')
+        build(cachingHelper(cacheDir))
+
+        expect:
+        PosixFilePermissions.toString(Files.getPosixFilePermissions(cacheDir.toPath())) == 'rwx------'
+
+        when:
+        File cacheFile = cacheDir.listFiles().find { it.name.endsWith('.ser') }
+        Files.setPosixFilePermissions(cacheFile.toPath(), PosixFilePermissions.fromString('rw-rw-rw-'))
+        HibernateConfigurationHelper helper = cachingHelper(cacheDir)
+        build(helper)
+
+        then:
+        !helper.configurationCached
+    }
+
+    private Configuration build(HibernateConfigurationHelper helper) {
+        Configuration configuration = helper.buildConfiguration()
+        configurations << configuration
+        configuration
+    }
+
+    private HibernateConfigurationHelper cachingHelper(File cacheDir) {
+        Map<String, Object> config = [
+            dialect              : 'org.hibernate.dialect.H2Dialect',
+            configurationCache   : true,
+            configurationCacheDir: cacheDir
+        ]
+        new HibernateConfigurationHelper(application, config, 'mappings', dataSource)
+    }
+}
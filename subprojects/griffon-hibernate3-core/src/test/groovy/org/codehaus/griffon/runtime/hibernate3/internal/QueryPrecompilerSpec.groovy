@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal
+
+import org.hibernate.cfg.Configuration
+import org.hibernate.cfg.Environment
+import org.hibernate.engine.SessionFactoryImplementor
+import spock.lang.AutoCleanup
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class QueryPrecompilerSpec extends Specification {
+    @Shared
+    @AutoCleanup
+    SessionFactoryImplementor sessionFactory = buildSessionFactory('precompile', true)
+
+    @Shared
+    @AutoCleanup
+    SessionFactoryImplementor uncheckedSessionFactory = buildSessionFactory('precompileUnchecked', false)
+
+    void 'Queries that fail to compile are reported with the reason'() {
+        when:
+        Map<String, String> failures = new QueryPrecompiler('people', sessionFactory)
+            .precompile(['from Person', 'peopleByName', 'peopleNative', 'from Persn', 'select nickname from Person', 'noSuchQuery'])
+
+        then:
+        failures.keySet() as List == ['from Persn', 'select nickname from Person', 'noSuchQuery']
+        failures['from Persn'].contains('Persn')
+        failures['select nickname from Person'].contains('nickname')
+    }
+
+    void 'Named HQL queries are only compiled when Hibernate does not check them on startup'() {
+        when:
+        Map<String, String> failures = new QueryPrecompiler('people', uncheckedSessionFactory)
+            .precompile(['peopleByName', 'peopleByNickname', 'peopleNative'])
+
+        then:
+        failures.keySet() as List == ['peopleByNickname']
+        failures['peopleByNickname'].contains('nickname')
+    }
+
+    void 'Setting #setting is read as #queries'() {
+        expect:
+        QueryPrecompiler.queriesOf('people', setting) as List == queries
+
+        where:
+        setting                         || queries
+        null                            || []
+        'from Person'                   || ['from Person']
+        ['from Person', 'peopleByName'] || ['from Person', 'peopleByName']
+    }
+
+    void 'Settings other than a list or a string are rejected'() {
+        when:
+        QueryPrecompiler.queriesOf('people', 42)
+
+        then:
+        IllegalArgumentException e = thrown()
+        e.message.contains('precompileQueries')
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory(String database, boolean checkNamedQueries) {
+        String namedQueries = checkNamedQueries ? '' : '<query name="peopleByNickname">select nickname from griffon.plugins.hibernate3.Person</query>'
+        (SessionFactoryImplementor) new Configuration()
+            .setProperty(Environment.DRIVER, 'org.h2.Driver')
+            .setProperty(Environment.URL, "jdbc:h2:mem:${database}")
+            .setProperty(Environment.USER, 'sa')
+            .setProperty(Environment.PASS, '')
+            .setProperty(Environment.DIALECT, 'org.hibernate.dialect.H2Dialect')
+            .setProperty(Environment.QUERY_STARTUP_CHECKING, String.valueOf(checkNamedQueries))
+            .addResource('griffon/plugins/hibernate3/Person.hbm.xml')
+            .addXML("""<!DOCTYPE hibernate-mapping PUBLIC "-//Hibernate/Hibernate Mapping DTD 3.0//EN" "http://www.hibernate.org/dtd/hibernate-mapping-3.0.dtd">
+                <hibernate-mapping>
+                    <query name="peopleByName">from griffon.plugins.hibernate3.Person where name = :name</query>
+                    ${namedQueries}
+                    <sql-query name="peopleNative">select * from person</sql-query>
+                </hibernate-mapping>""")
+            .buildSessionFactory()
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal
+
+import org.h2.jdbcx.JdbcDataSource
+import org.hibernate.cfg.Configuration
+import org.hibernate.cfg.Environment
+import spock.lang.Specification
+
+class SchemaFingerprintSpec extends Specification {
+    private static final String URL = 'jdbc:h2:mem:schema-fingerprint;DB_CLOSE_DELAY=-1'
+
+    void 'Schema is updated only when the mapped model changes'() {
+        given:
+        JdbcDataSource dataSource = new JdbcDataSource(URL: URL, user: 'sa', password: '')
+
+        when:
+        boolean first = new SchemaFingerprint('people', configuration(), dataSource).synchronize()
+        boolean second = new SchemaFingerprint('people', configuration(), dataSource).synchronize()
+
+        then:
+        first
+        !second
+        dataSource.connection.withCloseable { connection ->
+            connection.metaData.getTables(null, null, 'PEOPLE', null).next()
+        }
+    }
+
+    void 'Fingerprint depends on the mapped model'() {
+        given:
+        JdbcDataSource dataSource = new JdbcDataSource(URL: URL, user: 'sa', password: '')
+
+        expect:
+        new SchemaFingerprint('people', configuration(), dataSource).compute() ==
+            new SchemaFingerprint('people', configuration(), dataSource).compute()
+        new SchemaFingerprint('people', configuration(), dataSource).compute() !=
+            new SchemaFingerprint('people', new Configuration().setProperties(configuration().properties), dataSource).compute()
+    }
+
+    private static Configuration configuration() {
+        new Configuration()
+            .setProperty(Environment.DRIVER, 'org.h2.Driver')
+            .setProperty(Environment.URL, URL)
+            .setProperty(Environment.USER, 'sa')
+            .setProperty(Environment.PASS, '')
+            .setProperty(Environment.DIALECT, 'org.hibernate.dialect.H2Dialect')
+            .addResource('griffon/plugins/hibernate3/Person.hbm.xml')
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate3.internal
+
+import griffon.plugins.hibernate3.exceptions.RuntimeHibernate3Exception
+import org.hibernate.StaleObjectStateException
+import org.hibernate.dialect.H2Dialect
+import org.hibernate.dialect.MySQL5InnoDBDialect
+import org.hibernate.dialect.Oracle10gDialect
+import org.hibernate.dialect.SQLServer2008Dialect
+import org.hibernate.exception.GenericJDBCException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.sql.SQLException
+
+@Unroll
+class TransientFailuresSpec extends Specification {
+    void 'Failure #failure with #dialect is transient: #expected'() {
+        expect:
+        TransientFailures.isTransient(new RuntimeHibernate3Exception('default', failure), dialect) == expected
+
+        where:
+        failure                                                                       | dialect                    || expected
+        new StaleObjectStateException('Person', 1)                                    | null                       || true
+        new GenericJDBCException('update', new SQLException('deadlock', '40001'))     | null                       || true
+        new GenericJDBCException('update', new SQLException('deadlock', '40P01'))     | null                       || true
+        new GenericJDBCException('update', new SQLException('timeout', 'HYT00'))      | new H2Dialect()            || true
+        new GenericJDBCException('update', new SQLException('wait', 'HY000', 1205))   | new MySQL5InnoDBDialect()  || true
+        new GenericJDBCException('update', new SQLException('busy', '61000', 60))     | new Oracle10gDialect()     || true
+        new GenericJDBCException('update', new SQLException('victim', 'S0001', 1222)) | new SQLServer2008Dialect() || true
+        new GenericJDBCException('update', new SQLException('wait', 'HY000', 1205))   | new H2Dialect()            || false
+        new GenericJDBCException('insert', new SQLException('duplicate', '23505'))    | null                       || false
+        new IllegalStateException('boom')                                             | null                       || false
+    }
+}
@@ -37,8 +37,22 @@ environments {
 sessionFactories {
     internal {
         schema = 'create-drop'
+        trackOpenSessions = true
     }
     people {
         schema = 'create-drop'
+        batchSize = 20
+        orderInserts = true
+        orderUpdates = true
+        statistics = true
+        secondLevelCache = true
+        queryCache = true
+        cacheRegions = ['griffon.plugins.hibernate3.Person': [ttl: 300, maxEntries: 100]]
+        cachedEntities = ['griffon.plugins.hibernate3.Person': 'read-write']
+        precompileQueries = ['from Person']
+        streamFetchSize = 10
+        streamClearEvery = 10
+        retryAttempts = 3
+        retryBackoff = 1
     }
 }
\ No newline at end of file
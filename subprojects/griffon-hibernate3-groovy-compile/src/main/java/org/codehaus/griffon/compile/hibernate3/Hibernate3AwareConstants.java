@@ -37,16 +37,79 @@ public interface Hibernate3AwareConstants extends BaseConstants {
     String SESSION_TYPE = "org.hibernate.Session";
     String HIBERNATE3_HANDLER_TYPE = "griffon.plugins.hibernate3.Hibernate3Handler";
     String HIBERNATE3_CALLBACK_TYPE = "griffon.plugins.hibernate3.Hibernate3Callback";
+    String HIBERNATE3_STATELESS_CALLBACK_TYPE = "griffon.plugins.hibernate3.Hibernate3StatelessCallback";
+    String RETRY_POLICY_TYPE = "griffon.plugins.hibernate3.RetryPolicy";
+    String PROPAGATION_TYPE = "griffon.plugins.hibernate3.Propagation";
+    String HIBERNATE3_RESULTS_TYPE = "griffon.plugins.hibernate3.Hibernate3Results";
+    String HIBERNATE3_ROW_CALLBACK_TYPE = "griffon.plugins.hibernate3.Hibernate3RowCallback";
     String RUNTIME_HIBERNATE3_EXCEPTION_TYPE = "griffon.plugins.hibernate3.exceptions.RuntimeHibernate3Exception";
+    String JAVA_LANG_ITERABLE = "java.lang.Iterable";
+    String JAVA_UTIL_COLLECTION = "java.util.Collection";
+    String JAVA_UTIL_MAP = "java.util.Map";
+    String JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE = "java.util.concurrent.CompletableFuture";
     String HIBERNATE3_HANDLER_PROPERTY = "hibernate3Handler";
     String HIBERNATE3_HANDLER_FIELD_NAME = "this$" + HIBERNATE3_HANDLER_PROPERTY;
 
     String METHOD_WITH_SESSION = "withHbm3Session";
+    String METHOD_WITH_READ_ONLY_SESSION = "withHbm3ReadOnlySession";
+    String METHOD_WITH_STATELESS_SESSION = "withHbm3StatelessSession";
+    String METHOD_WITH_SESSION_ASYNC = "withHbm3SessionAsync";
+    String METHOD_WITH_SESSIONS = "withHbm3Sessions";
+    String METHOD_STREAM = "streamHbm3";
+    String METHOD_FLUSH_EVERY = "flushEvery";
     String METHOD_CLOSE_SESSION = "closeHbm3Session";
     String SESSION_FACTORY_NAME = "sessionFactoryName";
     String CALLBACK = "callback";
 
     MethodDescriptor[] METHODS = new MethodDescriptor[]{
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(HIBERNATE3_RESULTS_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_SESSIONS,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_COLLECTION, JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(HIBERNATE3_RESULTS_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_SESSIONS,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_COLLECTION, JAVA_LANG_STRING),
+                type("long"),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R))
+        ),
+        method(
+            type("long"),
+            typeParams(R),
+            METHOD_STREAM,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_MAP),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_ROW_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+        method(
+            type("long"),
+            typeParams(R),
+            METHOD_STREAM,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_MAP),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_ROW_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+        method(
+            type("int"),
+            METHOD_FLUSH_EVERY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), SESSION_TYPE),
+                type("int"),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_ITERABLE))
+        ),
         method(
             type(VOID),
             METHOD_CLOSE_SESSION
@@ -74,6 +137,105 @@ public interface Hibernate3AwareConstants extends BaseConstants {
                 annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
                 annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R)),
             throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), PROPAGATION_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), PROPAGATION_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), RETRY_POLICY_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), RETRY_POLICY_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_READ_ONLY_SESSION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_READ_ONLY_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_STATELESS_SESSION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_STATELESS_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_STATELESS_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_STATELESS_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE3_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_SESSION_ASYNC,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_SESSION_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE3_CALLBACK_TYPE, R))
         )
     };
 }
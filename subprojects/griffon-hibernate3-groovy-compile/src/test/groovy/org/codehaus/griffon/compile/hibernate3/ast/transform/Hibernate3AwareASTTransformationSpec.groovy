@@ -56,11 +56,19 @@ class Hibernate3AwareASTTransformationSpec extends Specification {
         when:
         def bean = shell.evaluate('''
         import griffon.plugins.hibernate3.Hibernate3Callback
+        import griffon.plugins.hibernate3.Hibernate3Results
+        import griffon.plugins.hibernate3.Hibernate3RowCallback
+        import griffon.plugins.hibernate3.Hibernate3StatelessCallback
+        import griffon.plugins.hibernate3.Propagation
+        import griffon.plugins.hibernate3.RetryPolicy
         import griffon.plugins.hibernate3.exceptions.RuntimeHibernate3Exception
         import griffon.plugins.hibernate3.Hibernate3Handler
+        import org.hibernate.Session
 
         import griffon.annotations.core.Nonnull
 
+        import java.util.concurrent.CompletableFuture
+
         @griffon.transform.hibernate3.Hibernate3Aware
         class Hibernate3HandlerBean implements Hibernate3Handler {
             @Override
@@ -71,6 +79,66 @@ class Hibernate3AwareASTTransformationSpec extends Specification {
              <R> R withHbm3Session(@Nonnull String sessionFactoryName, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
                 return null
             }
+            @Override
+             <R> R withHbm3Session(@Nonnull Propagation propagation, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm3Session(@Nonnull String sessionFactoryName, @Nonnull Propagation propagation, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm3Session(@Nonnull RetryPolicy retryPolicy, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm3Session(@Nonnull String sessionFactoryName, @Nonnull RetryPolicy retryPolicy, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm3ReadOnlySession(@Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm3ReadOnlySession(@Nonnull String sessionFactoryName, @Nonnull Hibernate3Callback<R> callback) throws RuntimeHibernate3Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm3StatelessSession(@Nonnull Hibernate3StatelessCallback<R> callback) throws RuntimeHibernate3Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm3StatelessSession(@Nonnull String sessionFactoryName, @Nonnull Hibernate3StatelessCallback<R> callback) throws RuntimeHibernate3Exception {
+                return null
+            }
+            @Override
+             <R> CompletableFuture<R> withHbm3SessionAsync(@Nonnull Hibernate3Callback<R> callback) {
+                return null
+            }
+            @Override
+             <R> CompletableFuture<R> withHbm3SessionAsync(@Nonnull String sessionFactoryName, @Nonnull Hibernate3Callback<R> callback) {
+                return null
+            }
+            @Override
+             <R> Hibernate3Results<R> withHbm3Sessions(@Nonnull Collection<String> sessionFactoryNames, @Nonnull Hibernate3Callback<R> callback) {
+                return null
+            }
+            @Override
+             <R> Hibernate3Results<R> withHbm3Sessions(@Nonnull Collection<String> sessionFactoryNames, long timeoutMillis, @Nonnull Hibernate3Callback<R> callback) {
+                return null
+            }
+            @Override
+             <R> long streamHbm3(@Nonnull String hql, @Nonnull Map<String, ?> params, @Nonnull Hibernate3RowCallback<R> callback) throws RuntimeHibernate3Exception {
+                return 0L
+            }
+            @Override
+             <R> long streamHbm3(@Nonnull String sessionFactoryName, @Nonnull String hql, @Nonnull Map<String, ?> params, @Nonnull Hibernate3RowCallback<R> callback) throws RuntimeHibernate3Exception {
+                return 0L
+            }
+            @Override
+            int flushEvery(@Nonnull Session session, int batchSize, @Nonnull Iterable<?> entities) {
+                return 0
+            }
             @Override
             void closeHbm3Session(){}
             @Override